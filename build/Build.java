@@ -1,3 +1,5 @@
+import com.sun.net.httpserver.HttpServer;
+
 String chariot_version = "0.2.0";
 
 void main(String... args) throws Exception {
@@ -77,12 +79,18 @@ void main(String... args) throws Exception {
             "--no-man-pages",
             "--no-header-files",
             "--strip-debug",
+            "--generate-cds-archive",
             "--module-path", String.join(File.pathSeparator, nativeJmods.toString(), moduleOut.toString(), lib.toString()),
             "--add-modules", module,
             "--launcher", module + "=" + module,
+            "--launcher", module + "-cli=" + module + "/" + module + ".CLI",
             "--output", out.resolve("runtime")
        );
 
+    if (archiveClasses(out.resolve("runtime"), module)) {
+        useArchive(out.resolve("runtime"), module);
+    }
+
     if (cross) {
         buildForAllPlatforms(jlink, module, prefix, out, moduleOut, cache, lib);
     }
@@ -197,15 +205,25 @@ void buildForAllPlatforms(ToolProvider jlink, String module, String prefix, Path
 
     jmodsPaths.stream()
         .forEach(jdk -> {
-            run(jlink,
+            String osAndArch = jdk.downloadableVersionedJdk().versionedJdk().jdk().osAndArch();
+            Path image = out.resolve(osAndArch).resolve(prefix);
+            // Archives can only be dumped by running the image, i.e. on its own platform
+            boolean host = osAndArch.equals(hostPlatform());
+            var args = new ArrayList<Object>(List.of(
                     "--compress", "zip-9",
                     "--no-man-pages",
                     "--no-header-files",
                     "--module-path", String.join(File.pathSeparator, jdk.jmods().toString(), moduleOut.toString(), lib.toString()),
                     "--add-modules", module,
                     "--launcher", module + "=" + module,
-                    "--output", out.resolve(jdk.downloadableVersionedJdk().versionedJdk().jdk().osAndArch()).resolve(prefix)
-               );
+                    "--launcher", module + "-cli=" + module + "/" + module + ".CLI",
+                    "--output", image));
+            if (host) args.addFirst("--generate-cds-archive");
+            run(jlink, args.toArray());
+
+            if (host && archiveClasses(image, module)) {
+                useArchive(image, module);
+            }
         });
 
     jmodsPaths.stream()
@@ -225,6 +243,146 @@ void buildForAllPlatforms(ToolProvider jlink, String module, String prefix, Path
         });
 }
 
+String hostPlatform() {
+    String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+    String arch = System.getProperty("os.arch");
+    return String.join("-",
+            os.startsWith("windows") ? "windows" : os.startsWith("mac") ? "macos" : "linux",
+            arch.equals("amd64") || arch.equals("x86_64") ? "x64" : arch);
+}
+
+Path archive(Path image, String module) {
+    return image.resolve("lib").resolve(module + ".jsa");
+}
+
+/**
+ * Trains the image with a run of the CLI against a local stub of the
+ * Lichess API, dumping the loaded classes into a dynamic CDS archive on
+ * top of the image's default archive. Reports the CLI startup time with
+ * and without the archive.
+ *
+ * @return true if the archive was created
+ */
+boolean archiveClasses(Path image, String module) {
+    Path java = image.resolve("bin").resolve(hostPlatform().startsWith("windows") ? "java.exe" : "java");
+    Path archive = archive(image, module);
+    HttpServer stub = null;
+    Path data = null;
+    try {
+        stub = stubApi();
+        data = Files.createTempDirectory("teamcheck-training");
+        var cli = List.of(
+                "-Dapi=http://localhost:" + stub.getAddress().getPort(),
+                "-Ddata=" + data,
+                "-m", module + "/" + module + ".CLI",
+                "--rate", "1000",
+                "--format", "ndjson",
+                "stub-team", "stub-team-2");
+
+        IO.println("Training " + image);
+        int exitCode = java(java, "-XX:ArchiveClassesAtExit=" + archive, cli, ProcessBuilder.Redirect.INHERIT);
+        if (exitCode != 0 || ! Files.exists(archive)) {
+            IO.println("Training run exited with code %d, no CDS archive created".formatted(exitCode));
+            Files.deleteIfExists(archive);
+            return false;
+        }
+
+        long withoutArchive = timed(() -> java(java, "-Xshare:auto", cli, ProcessBuilder.Redirect.DISCARD));
+        long withArchive = timed(() -> java(java, "-XX:SharedArchiveFile=" + archive, cli, ProcessBuilder.Redirect.DISCARD));
+        IO.println("CLI run against stub: %d ms with the default CDS archive, %d ms with %s".formatted(
+                    withoutArchive, withArchive, archive.getFileName()));
+        return true;
+    } catch (Exception e) {
+        IO.println("Couldn't create CDS archive - " + e.getMessage());
+        return false;
+    } finally {
+        if (stub != null) stub.stop(0);
+        if (data != null) del(data);
+    }
+}
+
+int java(Path java, String vmOption, List<String> args, ProcessBuilder.Redirect err) throws Exception {
+    var command = new ArrayList<String>();
+    command.add(java.toString());
+    command.add(vmOption);
+    command.addAll(args);
+    return new ProcessBuilder(command)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(err)
+        .start()
+        .waitFor();
+}
+
+long timed(Callable<Integer> run) throws Exception {
+    long start = System.nanoTime();
+    run.call();
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+}
+
+/**
+ * Serves a couple of teams, and their members, in the formats of the
+ * Lichess team endpoints used by the CLI.
+ */
+HttpServer stubApi() throws IOException {
+    var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/team/", exchange -> {
+        String path = exchange.getRequestURI().getPath();
+        String teamId = path.split("/")[3];
+        int members = 500;
+        long now = System.currentTimeMillis();
+        String body = path.endsWith("/users") ?
+            IntStream.range(0, members)
+                .mapToObj(i -> """
+                        {"joinedTeamAt":%d,"user":{"id":"user%d","name":"User%d","username":"User%d","createdAt":%d,"seenAt":%d,"tosViolation":%b}}
+                        """.formatted(now - i, i, i, i, now, now, i % 50 == 0))
+                .collect(Collectors.joining()) :
+            """
+            {"id":"%1$s","name":"Stub %1$s","description":"Training","open":true,"leader":{"id":"user0","name":"User0"},"leaders":[{"id":"user0","name":"User0"}],"nbMembers":%2$d}
+            """.formatted(teamId, members);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", path.endsWith("/users") ? "application/x-ndjson" : "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (var os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    });
+    server.start();
+    return server;
+}
+
+/**
+ * Makes the launchers of the image use the archive, falling back to no
+ * sharing if the archive can't be used.
+ */
+void useArchive(Path image, String module) {
+    for (String launcher : List.of(module, module + "-cli")) {
+        Path sh = image.resolve("bin").resolve(launcher);
+        Path bat = image.resolve("bin").resolve(launcher + ".bat");
+        try {
+            if (Files.exists(sh)) {
+                patch(sh, "(?m)^JLINK_VM_OPTIONS=$",
+                        "JLINK_VM_OPTIONS=\"-XX:SharedArchiveFile=`dirname $0`/../lib/%s.jsa -Xshare:auto\"".formatted(module));
+            }
+            if (Files.exists(bat)) {
+                patch(bat, "(?m)^set JLINK_VM_OPTIONS=$",
+                        "set JLINK_VM_OPTIONS=-XX:SharedArchiveFile=\"%%~dp0..\\lib\\%s.jsa\" -Xshare:auto".formatted(module));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+void patch(Path launcher, String regex, String replacement) throws IOException {
+    String script = Files.readString(launcher);
+    String patched = script.replaceFirst(regex, Matcher.quoteReplacement(replacement));
+    if (patched.equals(script)) {
+        IO.println("Unexpected launcher, CDS archive not enabled in " + launcher);
+        return;
+    }
+    Files.writeString(launcher, patched);
+}
+
 void del(Path dir) {
     if (Files.exists(dir)) {
         try (var files = Files.walk(dir).map(Path::toFile)) {
@@ -0,0 +1,101 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * Collects written text and passes it on in batches, when the buffered
+ * text reaches a size threshold or when it has waited long enough.
+ * Safe to share between threads.
+ * <p>
+ * The first failed write stops the batching, text that couldn't be
+ * written is kept and retried on {@link #close()}, and the error is
+ * thrown from every later {@link #write(String)} and from close.
+ */
+class BatchWriter implements AutoCloseable {
+
+    final OutputStream stream;
+    final Writer out;
+    final int maxChars;
+    final StringBuilder buffer = new StringBuilder();
+    final ReentrantLock lock = new ReentrantLock();
+    final Thread flusher;
+    IOException error = null;
+
+    BatchWriter(OutputStream stream, int maxChars, Duration maxDelay) {
+        this.stream = stream;
+        this.out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        this.maxChars = maxChars;
+        this.flusher = Thread.ofVirtual().name("batch-writer").start(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(maxDelay);
+                    try {
+                        flush();
+                    } catch (UncheckedIOException _) {
+                        return; // Reported from write() and close()
+                    }
+                }
+            } catch (InterruptedException _) {}
+        });
+    }
+
+    /**
+     * Writes to {@link System#out}, flushed after every batch, so the
+     * batches stay in order with anything else printed there.
+     */
+    static BatchWriter stdout() {
+        return new BatchWriter(System.out, 64 * 1024, Duration.ofMillis(250));
+    }
+
+    void write(String text) {
+        lock.lock();
+        try {
+            if (error != null) throw new UncheckedIOException(error);
+            buffer.append(text);
+            if (buffer.length() >= maxChars) flushBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void flush() {
+        lock.lock();
+        try {
+            flushBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushBuffer() {
+        if (buffer.isEmpty()) return;
+        try {
+            out.append(buffer);
+            out.flush();
+            // A PrintStream doesn't throw, it only remembers
+            if (stream instanceof PrintStream ps && ps.checkError()) {
+                throw new IOException("Couldn't write the output");
+            }
+            buffer.setLength(0);
+        } catch (IOException e) {
+            if (error == null) error = e;
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.interrupt();
+        lock.lock();
+        try {
+            if (error != null) {
+                // Retry what couldn't be written, but report the first error
+                try { flushBuffer(); } catch (UncheckedIOException _) {}
+                throw new UncheckedIOException(error);
+            }
+            flushBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,32 +2,203 @@ package teamcheck;
 
 import module chariot;
 
+import module java.base;
+
+import java.time.Duration;
+
 class CLI {
 
+    record Args(List<String> teamIds, int concurrency, double rate, boolean diff, boolean light,
+            long limit, Optional<Duration> timeout, Format format, boolean violationsOnly, boolean resume) {}
+
     public static void main(String... args) {
-        usage(args);
+        var parsed = parse(args);
 
-        var prefs = Main.prefs();
+        var client = client();
+
+        var defaults = CheckUtil.Options.defaults()
+            .withLimiter(RateLimiter.perSecond(parsed.rate()))
+            .withLight(parsed.light())
+            .withLimit(parsed.limit())
+            .withCheckpoints(! parsed.diff())
+            .withResume(parsed.resume());
+        var options = parsed.timeout().map(defaults::withTimeout).orElse(defaults);
+
+        boolean batch = parsed.teamIds().size() > 1;
+        var format = parsed.format();
+        Predicate<Member> filter = parsed.violationsOnly() ? Member::tosViolation : _ -> true;
+        var out = BatchWriter.stdout();
+        if (! parsed.diff()) format.header().ifPresent(out::write);
+
+        var collected = new ConcurrentHashMap<String, List<Member>>();
+
+        var checks = parsed.teamIds().stream()
+            .map(teamId -> {
+                if (parsed.diff()) {
+                    var entries = new ArrayList<Member>();
+                    collected.put(teamId, entries);
+                    return CheckUtil.of(
+                            teamId,
+                            _ -> {},
+                            entries::add,
+                            _ -> true
+                            )
+                        .withOptions(options);
+                }
+                String prefix = batch ? "[" + teamId + "] " : "";
+                return CheckUtil.of(
+                        teamId,
+                        t -> format.team(prefix, t).ifPresent(out::write),
+                        u -> out.write(format.member(prefix, teamId, u)),
+                        filter
+                        )
+                    .withOptions(options);
+            })
+            .toList();
 
+        var results = CheckUtil.processAll(client, checks, parsed.concurrency());
+
+        if (parsed.diff()) {
+            results.stream()
+                .filter(r -> ! r.failed())
+                .forEach(r -> diff(r, collected.get(r.teamId()), out));
+        }
+
+        // Keep machine-readable output free of the summary
+        if (batch && format == Format.text) out.write(summary(results));
+        out.close();
+        if (batch && format != Format.text) System.err.print(summary(results));
+    }
+
+    /**
+     * A client for the API at the {@code api} system property, such as a
+     * local Lichess or the stub of the build's training run, or else the
+     * client of the stored preferences.
+     */
+    static Client client() {
+        if (System.getProperty("api") instanceof String api) {
+            return Client.basic(conf -> conf.api(api));
+        }
+        var prefs = Main.prefs();
         var client = Client.load(prefs);
         client.store(prefs);
         try { prefs.flush();} catch (Exception e) { }
+        return client;
+    }
 
-        CheckUtil.of(
-                args[0],
-                t -> System.out.format("Team: %s%nMembers: %s%n", t.name(), t.nbMembers()),
-                u -> System.out.format("%-16s - %s%n", u.name(), u.url()),
-                u -> u.tosViolation()
-                )
-            .process(client);
-    }
-
-    static void usage(String... args) {
-        if (args.length != 1) {
-            var cmd = java.util.Optional.ofNullable(System.getProperty("sun.java.command"));
-            var msg = cmd.map(s -> "java -m " + s).orElse("<command>");
-            System.out.format("Usage: %s <teamId>%n", msg);
-            System.exit(0);
+    static void diff(CheckUtil.Result result, List<Member> entries, BatchWriter out) {
+        out.write("Team: %s%nMembers: %s%n".formatted(result.teamName(), entries.size()));
+
+        MemberStore.load(result.teamId()).ifPresentOrElse(previous -> {
+            var diff = MemberStore.diff(previous.entries(), entries);
+            out.write("Since %s%n".formatted(previous.savedAt()));
+            printEntries("Joined", diff.joined(), out);
+            printEntries("Left", diff.left(), out);
+            printEntries("Newly flagged", diff.newlyFlagged(), out);
+        },
+        () -> out.write("No previous snapshot%n".formatted()));
+
+        try {
+            MemberStore.save(result.teamId(), entries);
+        } catch (IOException e) {
+            System.err.format("Couldn't save snapshot for [%s] - %s%n", result.teamId(), e.getMessage());
+        }
+    }
+
+    static void printEntries(String title, List<Member> entries, BatchWriter out) {
+        out.write("%s: %d%n".formatted(title, entries.size()));
+        entries.forEach(e -> out.write("  %-16s - %s%n".formatted(e.name(), e.url())));
+    }
+
+    static String summary(List<CheckUtil.Result> results) {
+        var sb = new StringBuilder();
+        sb.append("%nSummary:%n".formatted());
+        for (var result : results) {
+            if (result.failed()) {
+                sb.append("%-24s failed: %s%n".formatted(result.teamId(), result.error().orElseThrow()));
+            } else {
+                sb.append("%-24s members: %7d  matched: %5d  violations: %5d  %s%n".formatted(
+                        result.teamId(), result.members(), result.matched(), result.violations(), result.elapsed()));
+            }
         }
+        sb.append("Teams: %d  Failed: %d  Members: %d  Matched: %d  Violations: %d  Slowest: %s%n".formatted(
+                results.size(),
+                results.stream().filter(CheckUtil.Result::failed).count(),
+                results.stream().mapToLong(CheckUtil.Result::members).sum(),
+                results.stream().mapToLong(CheckUtil.Result::matched).sum(),
+                results.stream().mapToLong(CheckUtil.Result::violations).sum(),
+                results.stream().map(CheckUtil.Result::elapsed).max(Comparator.naturalOrder()).orElse(Duration.ZERO)));
+        return sb.toString();
+    }
+
+    static Args parse(String... args) {
+        var teamIds = new ArrayList<String>();
+        int concurrency = 8;
+        double rate = 4;
+        boolean diff = false;
+        boolean light = false;
+        long limit = Long.MAX_VALUE;
+        Optional<Duration> timeout = Optional.empty();
+        Format format = Format.text;
+        boolean violationsOnly = false;
+        boolean resume = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                    case "--rate"        -> rate = Double.parseDouble(args[++i]);
+                    case "--file"        -> teamIds.addAll(readTeamIds(Path.of(args[++i])));
+                    case "--diff"        -> diff = true;
+                    case "--light"       -> light = true;
+                    case "--limit"       -> limit = Long.parseLong(args[++i]);
+                    case "--first"       -> limit = 1;
+                    case "--timeout"     -> timeout = Optional.of(Duration.ofMillis((long) (Double.parseDouble(args[++i]) * 1000)));
+                    case "--format"      -> format = Format.valueOf(args[++i]);
+                    case "--violations-only" -> violationsOnly = true;
+                    case "--resume"      -> resume = true;
+                    case String s when s.startsWith("--") -> usage();
+                    case String teamId   -> teamIds.add(teamId);
+                }
+            }
+        } catch (RuntimeException e) {
+            usage();
+        }
+        if (teamIds.isEmpty() || concurrency < 1 || rate <= 0 || limit < 1) usage();
+        // A diff needs the complete member list
+        if (diff && (limit != Long.MAX_VALUE || timeout.isPresent() || resume)) usage();
+        // The light endpoint has no ToS flags, a diff would report them all as newly flagged
+        if (light && (violationsOnly || diff)) usage();
+        return new Args(List.copyOf(teamIds), concurrency, rate, diff, light, limit, timeout, format, violationsOnly, resume);
+    }
+
+    static List<String> readTeamIds(Path file) {
+        try (var lines = Files.lines(file)) {
+            return lines.map(String::strip)
+                .filter(line -> ! line.isEmpty() && ! line.startsWith("#"))
+                .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void usage() {
+        var cmd = java.util.Optional.ofNullable(System.getProperty("sun.java.command"));
+        var msg = cmd.map(s -> "java -m " + s.split(" ")[0]).orElse("<command>");
+        System.out.format("""
+                Usage: %s [options] <teamId>...
+                Options:
+                  --file <path>         read team ids from file, one per line
+                  --concurrency <n>     number of teams checked concurrently (default 8)
+                  --rate <n>            max Lichess API requests per second, shared by all teams (default 4)
+                  --diff                only report joins, leaves and newly flagged members since last --diff run
+                  --light               use the lighter member endpoint, without ToS flags
+                  --violations-only     only list members marked with ToS violations
+                  --format <format>     text, ndjson, csv or tsv (default text)
+                  --limit <n>           stop after n matching members
+                  --first               stop after the first matching member
+                  --timeout <seconds>   stop after the given time
+                  --resume              continue an interrupted or timed out check after its last member
+                """, msg);
+        System.exit(0);
     }
 }
@@ -4,38 +4,290 @@ import module chariot;
 
 import module java.base;
 
+import java.time.Duration;
+
 public record CheckUtil(
         String teamId,
         Consumer<Team> teamHandler,
-        Consumer<User> userHandler,
-        Predicate<User> userFilter) {
+        Consumer<Member> userHandler,
+        Predicate<Member> userFilter,
+        Options options) {
+
+    /**
+     * @param limiter     shared rate limit of Lichess API requests
+     * @param light       fetch members from the lighter endpoint without full profiles,
+     *                    the members will then never be marked with ToS violations
+     * @param limit       stop fetching after this many matching members
+     * @param timeout     stop fetching after this long
+     * @param checkpoints periodically save the progress, see {@link Checkpoint}
+     * @param resume      continue after the last member of a saved checkpoint
+     */
+    public record Options(RateLimiter limiter, boolean light, long limit, Optional<Duration> timeout,
+            boolean checkpoints, boolean resume) {
+        public static Options defaults() {
+            return new Options(RateLimiter.unlimited(), false, Long.MAX_VALUE, Optional.empty(), false, false);
+        }
+
+        public Options withLimiter(RateLimiter limiter) {
+            return new Options(limiter, light, limit, timeout, checkpoints, resume);
+        }
+
+        public Options withLight(boolean light) {
+            return new Options(limiter, light, limit, timeout, checkpoints, resume);
+        }
+
+        public Options withLimit(long limit) {
+            return new Options(limiter, light, limit, timeout, checkpoints, resume);
+        }
+
+        public Options withTimeout(Duration timeout) {
+            return new Options(limiter, light, limit, Optional.of(timeout), checkpoints, resume);
+        }
+
+        public Options withCheckpoints(boolean checkpoints) {
+            return new Options(limiter, light, limit, timeout, checkpoints, resume);
+        }
+
+        public Options withResume(boolean resume) {
+            return new Options(limiter, light, limit, timeout, checkpoints, resume);
+        }
+    }
+
+    public record Result(String teamId, String teamName, int members, int matched, int violations,
+            Duration elapsed, Optional<String> error) {
+        public boolean failed() { return error.isPresent(); }
+
+        static Result failure(String teamId, String error, long startNanos) {
+            return new Result(teamId, "", 0, 0, 0, Duration.ofNanos(System.nanoTime() - startNanos), Optional.of(error));
+        }
+    }
+
+    public Result process(Client client) {
+        return process(client, () -> true);
+    }
+
+    static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(5);
+
+    // Phases of a resumed scan: members who joined since the checkpoint,
+    // then the members handled before, then the rest
+    static final int JOINED = 0, SKIP = 1, HANDLE = 2;
 
-    public void process(Client client) {
+    /**
+     * Stops fetching, and closes the underlying member stream, as soon as
+     * {@code proceed} returns false, the limit of matching members has been
+     * reached or the timeout has passed.
+     * <p>
+     * When resuming, the members are streamed from the start again (the API
+     * has no cursor). Members who joined since the checkpoint come first and
+     * are handled, the members from the first to the last one of the
+     * checkpoint are skipped, and the rest are handled.
+     */
+    Result process(Client client, BooleanSupplier proceed) {
+        long start = System.nanoTime();
+
+        if (! options.limiter().acquire()) return Result.failure(teamId, "Interrupted", start);
         if (! (client.teams().byTeamId(teamId) instanceof Some(Team team))) {
             System.err.format("Couldn't find team [%s]%n", teamId);
-            return;
+            return Result.failure(teamId, "Couldn't find team", start);
         }
 
         teamHandler.accept(team);
-        client.teams().usersByTeamIdFull(team.id()).stream()
-            .map(TeamMemberFull::user)
-            .filter(userFilter)
-            .forEach(userHandler);
+
+        var resume = options.resume() ? Checkpoint.load(teamId) : Optional.<Checkpoint>empty();
+        if (options.resume() && resume.isEmpty()) System.err.format("No checkpoint for [%s], starting over%n", teamId);
+
+        if (! options.limiter().acquire()) return Result.failure(teamId, "Interrupted", start);
+        var members = new AtomicInteger(resume.map(Checkpoint::members).orElse(0));
+        var matched = new AtomicInteger(resume.map(Checkpoint::matched).orElse(0));
+        var violations = new AtomicInteger(resume.map(Checkpoint::violations).orElse(0));
+        var resumeFirstId = resume.map(Checkpoint::firstId).orElse(null);
+        var resumeLastId = resume.map(Checkpoint::lastId).orElse(null);
+        var firstId = new AtomicReference<String>();
+        var lastId = new AtomicReference<String>(resumeLastId);
+        var phase = new AtomicInteger(resume.isPresent() ? JOINED : HANDLE);
+        var timedOut = new AtomicBoolean();
+        var completed = false;
+
+        // Called before a member is counted, i.e. when the previous one has been fully handled.
+        // Members are streamed newest first, so the handled members are always the range
+        // from the first member of this scan to the last one handled - except while handling
+        // members who joined since the checkpoint, then the checkpoint is kept as is.
+        var nextCheckpoint = new AtomicLong(start + CHECKPOINT_INTERVAL.toNanos());
+        Runnable checkpoint = () -> {
+            if (! options.checkpoints() || lastId.get() == null || phase.get() == JOINED) return;
+            Checkpoint.save(teamId, firstId.get(), lastId.get(), members.get(), matched.get(), violations.get());
+            nextCheckpoint.set(System.nanoTime() + CHECKPOINT_INTERVAL.toNanos());
+        };
+
+        try (var stream = members(client, team.id())) {
+            // Closing the stream releases the connection, also when blocked reading it
+            var watchdog = options.timeout().map(timeout -> Thread.ofVirtual().start(() -> {
+                try {
+                    Thread.sleep(timeout.minusNanos(System.nanoTime() - start));
+                    timedOut.set(true);
+                    stream.close();
+                } catch (InterruptedException _) {}
+            }));
+            try {
+                stream
+                    .takeWhile(_ -> proceed.getAsBoolean() && ! timedOut.get())
+                    .peek(member -> firstId.compareAndSet(null, member.id()))
+                    .filter(member -> switch (phase.get()) {
+                        case JOINED -> {
+                            if (member.id().equals(resumeFirstId)) {
+                                lastId.set(resumeLastId);
+                                phase.set(member.id().equals(resumeLastId) ? HANDLE : SKIP);
+                                yield false;
+                            }
+                            if (member.id().equals(resumeLastId)) {
+                                // The first member of the checkpoint has left, the members
+                                // handled so far were handled before too
+                                lastId.set(resumeLastId);
+                                phase.set(HANDLE);
+                                yield false;
+                            }
+                            yield true;
+                        }
+                        case SKIP -> {
+                            if (member.id().equals(resumeLastId)) phase.set(HANDLE);
+                            yield false;
+                        }
+                        default -> true;
+                    })
+                    .takeWhile(_ -> matched.get() < options.limit())
+                    .forEach(member -> {
+                        if (System.nanoTime() - nextCheckpoint.get() >= 0) checkpoint.run();
+                        boolean match = userFilter.test(member);
+                        if (match) userHandler.accept(member);
+                        // Only counted once handled, a failing handler leaves it for the resume
+                        members.incrementAndGet();
+                        if (member.tosViolation()) violations.incrementAndGet();
+                        if (match) matched.incrementAndGet();
+                        lastId.set(member.id());
+                    });
+                completed = ! timedOut.get() && proceed.getAsBoolean();
+            } catch (RuntimeException e) {
+                // A timeout closed the stream, saved below
+                if (! timedOut.get()) {
+                    checkpoint.run();
+                    throw e;
+                }
+            } finally {
+                watchdog.ifPresent(Thread::interrupt);
+            }
+        }
+
+        Optional<String> error = Optional.empty();
+        if (completed && phase.get() != HANDLE) {
+            error = Optional.of("Member of checkpoint not found, run without resume");
+        } else if (completed) {
+            if (options.checkpoints()) Checkpoint.delete(teamId);
+        } else {
+            checkpoint.run();
+            if (timedOut.get()) error = Optional.of("Timed out");
+        }
+
+        return new Result(teamId, team.name(), members.get(), matched.get(), violations.get(),
+                Duration.ofNanos(System.nanoTime() - start), error);
+    }
+
+    Stream<Member> members(Client client, String teamId) {
+        return options.light() ?
+            client.teams().usersByTeamId(teamId).stream()
+                .map(TeamMember::user)
+                .map(user -> new Member(user.id(), user.name(), false)) :
+            client.teams().usersByTeamIdFull(teamId).stream()
+                .map(TeamMemberFull::user)
+                .map(user -> new Member(user.id(), user.name(), user.tosViolation()));
+    }
+
+    /**
+     * Publishes the matching members to a single subscriber, as an
+     * alternative to the user handler. At most {@code bufferSize} members
+     * are buffered ahead of the subscriber's demand, beyond that fetching
+     * pauses until the subscriber requests more.
+     */
+    public Flow.Publisher<Member> publisher(Client client, int bufferSize) {
+        return publisher(client, bufferSize, task -> Thread.ofVirtual().name("members-" + teamId).start(task));
+    }
+
+    /**
+     * As {@link #publisher(Client, int)}, with the fetching run by {@code executor}.
+     */
+    public Flow.Publisher<Member> publisher(Client client, int bufferSize, Executor executor) {
+        return subscriber -> {
+            var publisher = new SubmissionPublisher<Member>(ForkJoinPool.commonPool(), bufferSize);
+            publisher.subscribe(subscriber);
+            executor.execute(() -> {
+                try {
+                    new CheckUtil(teamId, teamHandler, publisher::submit, userFilter, options)
+                        .process(client, publisher::hasSubscribers);
+                    publisher.close();
+                } catch (Exception e) {
+                    publisher.closeExceptionally(e);
+                }
+            });
+        };
+    }
+
+    /**
+     * Processes the checks concurrently on virtual threads, at most
+     * {@code concurrency} at a time.
+     * Share one {@link RateLimiter} between the checks to bound the
+     * overall request rate.
+     *
+     * @return the results, in the same order as the checks
+     */
+    public static List<Result> processAll(Client client, List<CheckUtil> checks, int concurrency) {
+        var permits = new Semaphore(concurrency);
+        // Start of each check, for the elapsed time of a check failing with an Error
+        var starts = new long[checks.size()];
+        Arrays.fill(starts, System.nanoTime());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = IntStream.range(0, checks.size())
+                .mapToObj(i -> executor.submit(() -> {
+                    var check = checks.get(i);
+                    long start = starts[i] = System.nanoTime();
+                    permits.acquire();
+                    try {
+                        return check.process(client);
+                    } catch (Exception e) {
+                        return Result.failure(check.teamId(), String.valueOf(e.getMessage()), start);
+                    } finally {
+                        permits.release();
+                    }
+                }))
+                .toList();
+
+            return IntStream.range(0, futures.size())
+                .mapToObj(i -> {
+                    try {
+                        return futures.get(i).get();
+                    } catch (Exception e) {
+                        return Result.failure(checks.get(i).teamId(), String.valueOf(e.getMessage()), starts[i]);
+                    }
+                })
+                .toList();
+        }
+    }
+
+    public CheckUtil withOptions(Options options) {
+        return new CheckUtil(teamId, teamHandler, userHandler, userFilter, options);
     }
 
     public static CheckUtil of(
             String teamId,
             Consumer<Team> teamHandler,
-            Consumer<User> userHandler) {
+            Consumer<Member> userHandler) {
         return of(teamId, teamHandler, userHandler, _ -> true);
     }
 
     static CheckUtil of(
             String teamId,
             Consumer<Team> teamHandler,
-            Consumer<User> userHandler,
-            Predicate<User> userFilter) {
-        return new CheckUtil(teamId, teamHandler, userHandler, userFilter);
+            Consumer<Member> userHandler,
+            Predicate<Member> userFilter) {
+        return new CheckUtil(teamId, teamHandler, userHandler, userFilter, Options.defaults());
     }
 
     public interface Mate {
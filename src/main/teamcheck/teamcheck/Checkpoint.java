@@ -0,0 +1,76 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * Progress of a member scan, saved periodically so that a scan of a large
+ * team which was interrupted can continue after the last member seen.
+ * Members are streamed most recently joined first, so the members from the
+ * first to the last one seen have been handled.
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * long    saved at, epoch millis
+ * utf     id of first member seen
+ * utf     id of last member seen
+ * int     members seen
+ * int     matched members
+ * int     members with ToS violations
+ * </pre>
+ */
+public record Checkpoint(Instant savedAt, String firstId, String lastId, int members, int matched, int violations) {
+
+    static final int MAGIC = 0x54434350; // TCCP
+    static final int VERSION = 2;
+
+    public static Path path(String teamId) {
+        return Storage.file("checkpoints", teamId);
+    }
+
+    public static Optional<Checkpoint> load(String teamId) {
+        Path file = path(teamId);
+        if (! Files.exists(file)) return Optional.empty();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.format("Ignoring unknown checkpoint format [%s]%n", file);
+                return Optional.empty();
+            }
+            return Optional.of(new Checkpoint(
+                        Instant.ofEpochMilli(in.readLong()),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readInt(),
+                        in.readInt(),
+                        in.readInt()));
+        } catch (IOException e) {
+            System.err.format("Couldn't read checkpoint [%s] - %s%n", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public static void save(String teamId, String firstId, String lastId, int members, int matched, int violations) {
+        try {
+            Storage.writeAtomically(path(teamId), out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeUTF(firstId);
+                out.writeUTF(lastId);
+                out.writeInt(members);
+                out.writeInt(matched);
+                out.writeInt(violations);
+            });
+        } catch (IOException e) {
+            System.err.format("Couldn't save checkpoint for [%s] - %s%n", teamId, e.getMessage());
+        }
+    }
+
+    public static void delete(String teamId) {
+        try {
+            Files.deleteIfExists(path(teamId));
+        } catch (IOException e) {
+            System.err.format("Couldn't delete checkpoint for [%s] - %s%n", teamId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package teamcheck;
+
+import module chariot;
+
+import module java.base;
+
+/**
+ * Output formats of the CLI member listing. The text format is meant for
+ * people, the other formats for piping into other tools and always carry
+ * the team id on each member record.
+ */
+enum Format {
+    text, ndjson, csv, tsv;
+
+    Optional<String> header() {
+        return switch (this) {
+            case csv -> Optional.of("team,id,name,url,tosViolation\n");
+            case tsv -> Optional.of("team\tid\tname\turl\ttosViolation\n");
+            default  -> Optional.empty();
+        };
+    }
+
+    Optional<String> team(String prefix, Team team) {
+        return switch (this) {
+            case text   -> Optional.of("%sTeam: %s%n%sMembers: %s%n".formatted(prefix, team.name(), prefix, team.nbMembers()));
+            case ndjson -> Optional.of("{\"type\":\"team\",\"team\":%s,\"name\":%s,\"members\":%d}\n".formatted(
+                        json(team.id()), json(team.name()), team.nbMembers()));
+            default     -> Optional.empty();
+        };
+    }
+
+    String member(String prefix, String teamId, Member member) {
+        return switch (this) {
+            case text   -> "%s%-16s - %s%n".formatted(prefix, member.name(), member.url());
+            case ndjson -> "{\"type\":\"member\",\"team\":%s,\"id\":%s,\"name\":%s,\"url\":%s,\"tosViolation\":%b}\n".formatted(
+                        json(teamId), json(member.id()), json(member.name()), json(member.url()), member.tosViolation());
+            case csv    -> String.join(",", csv(teamId), csv(member.id()), csv(member.name()), csv(member.url()),
+                        String.valueOf(member.tosViolation())) + "\n";
+            case tsv    -> String.join("\t", tsv(teamId), tsv(member.id()), tsv(member.name()), tsv(member.url()),
+                        String.valueOf(member.tosViolation())) + "\n";
+        };
+    }
+
+    static String json(String s) {
+        var sb = new StringBuilder(s.length() + 2).append('"');
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"'  -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default   -> {
+                    if (c < 0x20) sb.append("\\u%04x".formatted((int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    static String csv(String s) {
+        return s.contains(",") || s.contains("\"") || s.contains("\n") ?
+            "\"" + s.replace("\"", "\"\"") + "\"" :
+            s;
+    }
+
+    static String tsv(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ');
+    }
+}
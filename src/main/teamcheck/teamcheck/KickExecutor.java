@@ -0,0 +1,98 @@
+package teamcheck;
+
+import module java.base;
+
+import teamcheck.CheckUtil.Mate;
+
+/**
+ * Runs kicks in the background, each on its own virtual thread, started no
+ * faster than the rate limiter allows. Kicking a member who is already
+ * queued returns the future of the queued kick.
+ * {@code onChange} is called whenever a kick is queued, on the calling
+ * thread, and whenever a kick completes, on the thread of the kick.
+ */
+public class KickExecutor implements AutoCloseable {
+
+    final Mate mate;
+    final RateLimiter limiter;
+    final Consumer<KickExecutor> onChange;
+    final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kick-", 0).factory());
+    final Map<String, CompletableFuture<Boolean>> queued = new ConcurrentHashMap<>();
+    final AtomicInteger kicked = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final AtomicInteger cancelled = new AtomicInteger();
+
+    public KickExecutor(Mate mate, RateLimiter limiter, Consumer<KickExecutor> onChange) {
+        this.mate = mate;
+        this.limiter = limiter;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Kicks per second, from the {@code kickRate} system property.
+     * Lichess answers with 429 when kicking too fast, so the default is modest.
+     */
+    public static RateLimiter limiterFromProperty() {
+        return RateLimiter.perSecond(Double.parseDouble(System.getProperty("kickRate", "2")), 4);
+    }
+
+    /**
+     * @return completes with true if the member was kicked, false if the kick
+     *         failed or the executor was closed before it was made, counted
+     *         as failed or cancelled respectively
+     */
+    public CompletableFuture<Boolean> kick(String userId) {
+        var added = new CompletableFuture<Boolean>();
+        var existing = queued.putIfAbsent(userId, added);
+        if (existing != null) return existing;
+
+        try {
+            executor.execute(() -> {
+                boolean result = false;
+                try {
+                    result = limiter.acquire() && mate.kick(userId);
+                } catch (Exception e) {
+                    if (! executor.isShutdown()) System.err.format("Couldn't kick [%s] - %s%n", userId, e.getMessage());
+                } finally {
+                    // Interrupted by close(), not made rather than failed
+                    (result ? kicked : executor.isShutdown() ? cancelled : failed).incrementAndGet();
+                    queued.remove(userId);
+                    added.complete(result);
+                    onChange.accept(this);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cancelled.incrementAndGet();
+            queued.remove(userId);
+            added.complete(false);
+        }
+        onChange.accept(this);
+        return added;
+    }
+
+    /**
+     * @return the futures of the kicks, in the iteration order of {@code userIds}
+     */
+    public List<CompletableFuture<Boolean>> kickAll(Collection<String> userIds) {
+        return userIds.stream().map(this::kick).toList();
+    }
+
+    public int queued() { return queued.size(); }
+    public int kicked() { return kicked.get(); }
+    public int failed() { return failed.get(); }
+    public int cancelled() { return cancelled.get(); }
+
+    public String status() {
+        return cancelled() == 0 ?
+            "Kicked: %d  Failed: %d  Queued: %d".formatted(kicked(), failed(), queued()) :
+            "Kicked: %d  Failed: %d  Cancelled: %d  Queued: %d".formatted(kicked(), failed(), cancelled(), queued());
+    }
+
+    /**
+     * Cancels the kicks which haven't been made yet, without waiting.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
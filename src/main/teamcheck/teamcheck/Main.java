@@ -16,9 +16,8 @@ class Main {
         }
 
         var prefs = prefs();
-        var client = Client.load(prefs);
 
-        SwingUtilities.invokeLater(() -> new TeamChooser(client, prefs));
+        SwingUtilities.invokeLater(() -> new TeamChooser(prefs));
     }
 
     static Preferences prefs() {
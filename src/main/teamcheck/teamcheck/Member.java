@@ -0,0 +1,19 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * The parts of a team member the checks need, projected from the chariot
+ * user models as they are streamed, so large teams don't keep full
+ * profiles in memory.
+ */
+public record Member(String id, String name, boolean tosViolation) {
+
+    public static Member of(String name, boolean tosViolation) {
+        return new Member(name.toLowerCase(Locale.ROOT), name, tosViolation);
+    }
+
+    public String url() {
+        return "https://lichess.org/@/" + name;
+    }
+}
@@ -0,0 +1,82 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * On-disk snapshot of the members of a team, in the order they were
+ * streamed from Lichess (most recently joined first), with the flags
+ * known at that time. Used to report only what changed since last run.
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * long    saved at, epoch millis
+ * int     count
+ * count * (utf name, byte flags)
+ * </pre>
+ */
+public class MemberStore {
+
+    static final int MAGIC = 0x54434d53; // TCMS
+    static final int VERSION = 1;
+    static final int FLAG_TOS_VIOLATION = 1;
+
+    public record Snapshot(Instant savedAt, List<Member> entries) {}
+
+    public record Diff(List<Member> joined, List<Member> left, List<Member> newlyFlagged) {}
+
+    public static Path path(String teamId) {
+        return Storage.file("snapshots", teamId);
+    }
+
+    public static Optional<Snapshot> load(String teamId) {
+        Path file = path(teamId);
+        if (! Files.exists(file)) return Optional.empty();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.format("Ignoring unknown snapshot format [%s]%n", file);
+                return Optional.empty();
+            }
+            var savedAt = Instant.ofEpochMilli(in.readLong());
+            int count = in.readInt();
+            var entries = new ArrayList<Member>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int flags = in.readByte();
+                entries.add(Member.of(name, (flags & FLAG_TOS_VIOLATION) != 0));
+            }
+            return Optional.of(new Snapshot(savedAt, entries));
+        } catch (IOException e) {
+            System.err.format("Couldn't read snapshot [%s] - %s%n", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public static void save(String teamId, List<Member> entries) throws IOException {
+        Storage.writeAtomically(path(teamId), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(entries.size());
+            for (var entry : entries) {
+                out.writeUTF(entry.name());
+                out.writeByte(entry.tosViolation() ? FLAG_TOS_VIOLATION : 0);
+            }
+        });
+    }
+
+    public static Diff diff(List<Member> previous, List<Member> current) {
+        var before = HashMap.<String, Member>newHashMap(previous.size());
+        previous.forEach(e -> before.put(e.id(), e));
+        var now = HashSet.<String>newHashSet(current.size());
+        current.forEach(e -> now.add(e.id()));
+
+        var joined = current.stream().filter(e -> ! before.containsKey(e.id())).toList();
+        var left = previous.stream().filter(e -> ! now.contains(e.id())).toList();
+        var newlyFlagged = current.stream()
+            .filter(Member::tosViolation)
+            .filter(e -> ! (before.get(e.id()) instanceof Member old && old.tosViolation()))
+            .toList();
+        return new Diff(joined, left, newlyFlagged);
+    }
+}
@@ -0,0 +1,65 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * Token bucket, shared by everything that calls the Lichess API so that
+ * concurrent work stays within one overall request rate.
+ */
+public class RateLimiter {
+
+    final double permitsPerNano;
+    final double capacity;
+    final ReentrantLock lock = new ReentrantLock();
+
+    double tokens;
+    long last = System.nanoTime();
+
+    RateLimiter(double permitsPerSecond, double burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = this.capacity;
+    }
+
+    public static RateLimiter perSecond(double permitsPerSecond) {
+        return new RateLimiter(permitsPerSecond, 1);
+    }
+
+    public static RateLimiter perSecond(double permitsPerSecond, int burst) {
+        return new RateLimiter(permitsPerSecond, burst);
+    }
+
+    public static RateLimiter unlimited() {
+        return new RateLimiter(Double.POSITIVE_INFINITY, 1);
+    }
+
+    /**
+     * Blocks until a permit is available.
+     * @return false if interrupted while waiting, with the interrupt status restored
+     */
+    public boolean acquire() {
+        if (Double.isInfinite(permitsPerNano)) return true;
+        while (true) {
+            long waitNanos;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - last) * permitsPerNano);
+                last = now;
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return true;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / permitsPerNano);
+            } finally {
+                lock.unlock();
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
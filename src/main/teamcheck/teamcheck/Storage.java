@@ -0,0 +1,44 @@
+package teamcheck;
+
+import module java.base;
+
+/**
+ * Location of local data files, and atomic writing of them.
+ * The directory can be set with the {@code data} system property,
+ * and defaults to {@code .teamcheck} in the user's home directory.
+ */
+public class Storage {
+
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static Path dir() {
+        return Path.of(System.getProperty("data", Path.of(System.getProperty("user.home"), ".teamcheck").toString()));
+    }
+
+    public static Path file(String kind, String name) {
+        return dir().resolve(kind).resolve(name.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    /**
+     * Writes to a temporary file next to the target, and moves it into place,
+     * so readers never see a partially written file.
+     */
+    public static void writeAtomically(Path target, Writer writer) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writer.write(out);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
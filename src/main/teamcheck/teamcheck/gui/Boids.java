@@ -1,41 +1,118 @@
 package teamcheck.gui;
 
-import module chariot;
-
 import module java.base;
 import module java.desktop;
 
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.util.List;
 
-import static java.util.function.Predicate.not;
-
+import teamcheck.KickExecutor;
+import teamcheck.Member;
 import teamcheck.Vec;
-import teamcheck.CheckUtil.Mate;
 
 class Boids extends JComponent {
 
-    boolean running = false;
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+    static final int MAX_CATCH_UP_TICKS = 5;
+    static final int FRAME_MILLIS = 15;
+
+    // Level of detail, boids are binned into screen cells while painting.
+    // Cells holding more than DENSE_CELL boids are drawn as a single heat
+    // blob, and labels are hidden when more than LABEL_LIMIT boids are on
+    // screen. Curious boids are always drawn with their label.
+    static final int LOD_CELL = 40;
+    static final int DENSE_CELL = 12;
+    static final int LABEL_LIMIT = 400;
+    static final int OFFSCREEN_MARGIN = 20;
+
+    // Dirty cells are repainted as separate regions up to this many
+    static final int MAX_REGIONS = 16;
+
+    // Heat blob colors, alpha 40 + 2 * boids in the cell, up to 200
+    static final Color[] HEAT = IntStream.rangeClosed(0, 160)
+        .mapToObj(a -> new Color(0x33, 0x66, 0x33, 40 + a))
+        .toArray(Color[]::new);
+
+    volatile boolean running = false;
+    volatile boolean stopped = false;
+    volatile boolean paused = false;
+    volatile Thread simulation = null;
 
     static Random random = new Random();
-    record Boid(Vec position, Vec velocity, boolean curious, Color color, int size, String name) {
-        Boid withPos(Vec newPos) {
-            return new Boid(newPos, velocity, curious, color, size, name);
-        }
-        Boid withVel(Vec newVel) {
-            return new Boid(position, newVel, curious, color, size, name);
-        }
-     }
+    record Boid(int id, Vec position, Vec velocity, boolean curious, Color color, int size, String name) {}
+
+    static AtomicInteger nextId = new AtomicInteger();
+
+    // Lock-free queues, fed by the member fetch thread and the EDT,
+    // drained by the simulation thread at the start of each tick.
+    Queue<Boid> toAdd       = new ConcurrentLinkedQueue<>();
+    Queue<Integer> toRemove = new ConcurrentLinkedQueue<>();
+    AtomicInteger pending   = new AtomicInteger();
+
+    // Members are requested from the publisher as boids are admitted, so
+    // at most SPAWN_BUFFER boids are waiting in toAdd at any time.
+    static final int SPAWN_BUFFER = 256;
+    volatile Flow.Subscription subscription = null;
+    volatile int expected = 0;
+    int admitted = 0;
+
+    volatile SpawnPolicy spawnPolicy = SpawnPolicy.fromProperty();
 
-    List<Boid> boids =    Collections.synchronizedList(new ArrayList<>());
-    List<Boid> toAdd =    Collections.synchronizedList(new ArrayList<>());
-    List<Boid> toRemove = Collections.synchronizedList(new ArrayList<>());
+    Flock flock = new Flock();
+    int[] removedIds = new int[16];
 
-    long prevAdd = t();
+    final Sprites sprites = new Sprites(4096);
+
+    // Step and paint times by flock size, reported with -Dtiming
+    final Timings stepTimes = new Timings("step");
+    final Timings paintTimes = new Timings("paint");
+    final Queue<String> removedNames = new ConcurrentLinkedQueue<>();
+
+    // Painting scratch arrays, only used on the EDT
+    int[] density = new int[0];
+    int[] cellOf = new int[0];
+
+    volatile Point mouse = null;
+
+    // Triple buffered snapshots, the simulation thread writes into back and
+    // publishes it to latest, the EDT swaps latest with front when newer.
+    final AtomicReference<Snapshot> latest = new AtomicReference<>(new Snapshot());
+    Snapshot back = new Snapshot();
+    Snapshot front = new Snapshot();
+    long tick = 0;
+
+    final javax.swing.Timer frameTimer = new javax.swing.Timer(FRAME_MILLIS, _ -> repaintDirty());
+
+    // Cells of the LOD grid covered by the boids at the last repaint, and
+    // the frame it showed, only used on the EDT
+    boolean[] painted = new boolean[0];
+    boolean[] covered = new boolean[0];
+    long paintedTick = -1;
+    double paintedAlpha = -1;
+    double alpha = 1;
+    int visible = 0;
 
     MouseListener ml = null;
+    volatile KickExecutor kicks = null;
 
-    void weaponize(Mate mate) {
+    Boids() {
+        var tracker = new MouseAdapter() {
+            @Override public void mouseMoved(MouseEvent e)   { mouse = e.getPoint(); }
+            @Override public void mouseDragged(MouseEvent e) { mouse = e.getPoint(); }
+            @Override public void mouseExited(MouseEvent e)  { mouse = null; }
+        };
+        addMouseListener(tracker);
+        addMouseMotionListener(tracker);
+    }
+
+    /**
+     * Clicking a boid queues a kick of its member, the boid is removed when
+     * the kick has been made. Kicks never block the EDT.
+     */
+    void weaponize(KickExecutor kicks) {
+        this.kicks = kicks;
 
         SwingUtilities.invokeLater(() -> setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR)));
 
@@ -43,17 +120,17 @@ class Boids extends JComponent {
 
             @Override
             public void mouseClicked(MouseEvent e) {
-                Predicate<Boid> clickHitBoid = b -> Math.hypot(
-                        b.position().x() - e.getX(),
-                        getHeight() - b.position().y() - e.getY())
-                    < b.size();
-
-                boids.stream()
-                    .filter(clickHitBoid)
-                    .findFirst()
-                    .ifPresent(b -> {
-                        if (mate.kick(b.name())) toRemove.add(b);
-                    });
+                var s = front;
+                for (int i = 0; i < s.count; i++) {
+                    boolean clickHitBoid = Math.hypot(
+                            s.x[i] - e.getX(),
+                            getHeight() - s.y[i] - e.getY())
+                        < s.size[i];
+                    if (clickHitBoid) {
+                        kick(kicks, s.id[i], s.name[i]);
+                        return;
+                    }
+                }
             }
 
             @Override public void mousePressed(MouseEvent e) { }
@@ -65,13 +142,46 @@ class Boids extends JComponent {
         addMouseListener(ml);
     }
 
+    void kick(KickExecutor kicks, int id, String name) {
+        kicks.kick(name).thenAccept(kicked -> { if (kicked) toRemove.add(id); });
+    }
+
+    /**
+     * Queues kicks of all flagged members currently shown, after confirmation.
+     * Called on the EDT.
+     */
+    void kickAllFlagged() {
+        var kicks = this.kicks;
+        if (kicks == null) return;
+        // Copied, the snapshot is handed back to the simulation while the dialog is shown
+        var s = front;
+        var flagged = IntStream.range(0, s.count).filter(i -> s.curious[i]).toArray();
+        var ids = Arrays.stream(flagged).map(i -> s.id[i]).toArray();
+        var names = Arrays.stream(flagged).mapToObj(i -> s.name[i]).toArray(String[]::new);
+        if (ids.length == 0) return;
+
+        int answer = JOptionPane.showConfirmDialog(this,
+                "Kick the %d flagged members shown?".formatted(ids.length),
+                "Kick flagged",
+                JOptionPane.OK_CANCEL_OPTION);
+        if (answer != JOptionPane.OK_OPTION) return;
+
+        var results = kicks.kickAll(Arrays.asList(names));
+        for (int i = 0; i < ids.length; i++) {
+            int id = ids[i];
+            results.get(i).thenAccept(kicked -> { if (kicked) toRemove.add(id); });
+        }
+    }
+
     void deweaponize() {
         SwingUtilities.invokeLater(() -> setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR)));
         removeMouseListener(ml);
         ml = null;
+        if (kicks instanceof KickExecutor k) k.close();
+        kicks = null;
     }
 
-    void spawnBoidOnEdge(User user) {
+    void spawnBoidOnEdge(Member user) {
         var width = getWidth();
         var height = getHeight();
         var positionOnEdge = switch(random.nextInt(2)) {
@@ -85,196 +195,340 @@ class Boids extends JComponent {
         var mark = user.tosViolation();
         var color = mark ? Color.red.darker().darker() : Color.green.darker().darker();
         var size = mark ? 20 : 10;
-        toAdd.add(new Boid(positionOnEdge, velocityTowardsCenter, mark, color, size, name));
+        toAdd.add(new Boid(nextId.getAndIncrement(), positionOnEdge, velocityTowardsCenter, mark, color, size, name));
+        pending.incrementAndGet();
+    }
+
+    Flow.Subscriber<Member> subscriber() {
+        return new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(SPAWN_BUFFER);
+            }
+            @Override public void onNext(Member user) { spawnBoidOnEdge(user); }
+            @Override public void onError(Throwable t) { System.err.format("Couldn't fetch members - %s%n", t.getMessage()); }
+            @Override public void onComplete() { }
+        };
     }
 
+    /**
+     * Number of members the team is expected to have, so the spawn policy
+     * sees the whole backlog and not only the buffered part of it.
+     */
+    void expect(int members) {
+        expected = members;
+    }
+
+    void spawnPolicy(SpawnPolicy policy) {
+        spawnPolicy = policy;
+    }
+
+    /**
+     * Runs the simulation at a fixed timestep on the calling thread, until
+     * {@link #stop()}. Painting is driven separately by a Swing timer, which
+     * picks up the latest published snapshot.
+     * The flock and the snapshots are released when the simulation ends.
+     */
     void start() {
+        simulation = Thread.currentThread();
         running = true;
-        while (running) {
-            var t = t();
-            step();
-            repaint();
-            handleBoidsCountChanges();
-            idle(t);
-         }
+        if (stopped) running = false;
+        SwingUtilities.invokeLater(() -> { if (running && ! paused) frameTimer.start(); });
+
+        try {
+            long next = System.nanoTime();
+            while (running) {
+                if (paused) {
+                    LockSupport.park(this);
+                    next = System.nanoTime();
+                    continue;
+                }
+                long now = System.nanoTime();
+                int ticks = 0;
+                while (now - next >= 0 && ticks < MAX_CATCH_UP_TICKS) {
+                    handleBoidsCountChanges();
+                    step();
+                    next += TICK_NANOS;
+                    ticks++;
+                }
+                if (now - next >= 0) {
+                    // Too far behind, drop the backlog instead of spiraling
+                    next = now + TICK_NANOS;
+                }
+                if (ticks > 0) publish(now);
+
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+        } finally {
+            flock = new Flock();
+            removedIds = new int[16];
+            back = new Snapshot();
+            latest.set(new Snapshot());
+        }
+    }
+
+    /**
+     * Stops stepping and painting, the member fetch pauses too once the
+     * spawn buffer is full.
+     */
+    void pause() {
+        paused = true;
+        SwingUtilities.invokeLater(frameTimer::stop);
+    }
+
+    void resume() {
+        paused = false;
+        if (simulation instanceof Thread t) LockSupport.unpark(t);
+        SwingUtilities.invokeLater(() -> { if (running && ! paused) frameTimer.start(); });
     }
 
     void stop() {
+        stopped = true;
         running = false;
+        if (simulation instanceof Thread t) LockSupport.unpark(t);
+        // Lets the member fetch stop, also when blocked on a full buffer
+        if (subscription instanceof Flow.Subscription s) s.cancel();
+        subscription = null;
+        toAdd.clear();
+        toRemove.clear();
+        pending.set(0);
+        SwingUtilities.invokeLater(() -> {
+            frameTimer.stop();
+            sprites.clear();
+            removedNames.clear();
+            front = new Snapshot();
+            density = new int[0];
+            cellOf = new int[0];
+            painted = new boolean[0];
+            covered = new boolean[0];
+            paintedTick = -1;
+        });
         if (ml != null) {
             removeMouseListener(ml);
         }
     }
 
-    @Override
-    public void paintComponent(Graphics g) {
-        boids.stream().forEach(b -> drawBoid(b, g));
+    void publish(long nanos) {
+        back.fill(flock, tick++, nanos);
+        back = latest.getAndSet(back);
     }
 
-    void drawBoid(Boid b, Graphics g) {
-        int x = (int) b.position().x() - b.size()/2;
-        int y = getHeight() - (int) b.position().y() - b.size()/2;
+    /**
+     * Picks up the latest snapshot and repaints only the cells of the LOD
+     * grid covered by the boids in this frame or the last one, merged into
+     * at most {@link #MAX_REGIONS} rectangles. Falls back to a single
+     * repaint of their bounds when there are more, or of the whole
+     * component when that is more than half of it. Frames showing the same
+     * tick at the same interpolation as the last one aren't repainted.
+     */
+    void repaintDirty() {
+        if (latest.get().tick > front.tick) {
+            front = latest.getAndSet(front);
+        }
+        var s = front;
+        alpha = Math.clamp((System.nanoTime() - s.nanos) / (double) TICK_NANOS, 0, 1);
+        if (s.tick == paintedTick && alpha == paintedAlpha) return;
+        paintedTick = s.tick;
+        paintedAlpha = alpha;
 
-        g.setColor(b.color());
-        g.fillOval(x, y, b.size(), b.size());
+        int width = getWidth();
+        int height = getHeight();
+        int cols = width / LOD_CELL + 1;
+        int rows = height / LOD_CELL + 1;
+        boolean resized = painted.length != cols * rows;
+        if (resized) {
+            painted = new boolean[cols * rows];
+            covered = new boolean[cols * rows];
+        } else {
+            Arrays.fill(covered, false);
+        }
 
-        g.setColor(Color.pink.darker().darker());
-        g.drawString(b.name(), x, y);
-    }
+        visible = 0;
+        for (int i = 0; i < s.count; i++) {
+            int x = (int) s.x(i, alpha);
+            int y = height - (int) s.y(i, alpha);
+            if (x < -OFFSCREEN_MARGIN || x > width + OFFSCREEN_MARGIN ||
+                y < -OFFSCREEN_MARGIN || y > height + OFFSCREEN_MARGIN) continue;
+            visible++;
+            // The sprite with its label, and the heat blob of its cell
+            int half = s.size[i] / 2;
+            int c0 = Math.max(0, (x - half) / LOD_CELL - 1);
+            int c1 = Math.min(cols - 1, (x - half + sprites.maxWidth) / LOD_CELL + 1);
+            int r0 = Math.max(0, (y - half - sprites.maxAscent) / LOD_CELL - 1);
+            int r1 = Math.min(rows - 1, (y + half + sprites.maxAscent) / LOD_CELL + 1);
+            for (int r = r0; r <= r1; r++) {
+                Arrays.fill(covered, r * cols + c0, r * cols + c1 + 1, true);
+            }
+        }
 
-    void step() {
-        List<Boid> newBoids = Collections.synchronizedList(new ArrayList<>(boids.size()));
+        var dirty = painted;
+        for (int c = 0; c < dirty.length; c++) dirty[c] |= covered[c];
+        painted = covered;
+        covered = dirty;
+        if (resized) {
+            repaint();
+            return;
+        }
 
-        boids.stream()
-            .parallel()
-            .forEach(boid -> {
-                var newVel = boid.velocity();
-                var newPos = boid.position();
+        var regions = regions(dirty, cols, rows);
+        if (regions.isEmpty()) return;
+        var bounds = regions.stream().reduce(Rectangle::union).orElseThrow();
+        long area = regions.stream().mapToLong(r -> (long) r.width * r.height).sum();
+        if (area > (long) width * height / 2 || (regions.size() > MAX_REGIONS &&
+                (long) bounds.width * bounds.height > (long) width * height / 2)) {
+            repaint();
+        } else if (regions.size() > MAX_REGIONS) {
+            repaint(bounds);
+        } else {
+            // The RepaintManager would merge separate repaint() calls into
+            // their bounds again
+            regions.forEach(this::paintImmediately);
+        }
+    }
 
-                var flee = flee(boid);
-                if (flee.x() != 0 || flee.y() != 0) {
-                    newVel = flee;
+    /**
+     * Merges the dirty cells into rectangles, runs of cells in a row
+     * joined with overlapping runs of the row above.
+     */
+    static List<Rectangle> regions(boolean[] dirty, int cols, int rows) {
+        var regions = new ArrayList<Rectangle>();
+        var open = new ArrayList<Rectangle>();
+        var next = new ArrayList<Rectangle>();
+        for (int r = 0; r < rows; r++) {
+            next.clear();
+            for (int c = 0; c < cols; c++) {
+                if (! dirty[r * cols + c]) continue;
+                int start = c;
+                while (c + 1 < cols && dirty[r * cols + c + 1]) c++;
+                var run = new Rectangle(start * LOD_CELL, r * LOD_CELL, (c - start + 1) * LOD_CELL, LOD_CELL);
+                var above = open.stream()
+                    .filter(o -> o.x < run.x + run.width && run.x < o.x + o.width)
+                    .findFirst();
+                if (above.isPresent()) {
+                    var region = above.get();
+                    open.remove(region);
+                    region.add(run);
+                    next.add(region);
                 } else {
-                    newVel = newVel
-                        .add(alignment(boid))
-                        .add(cohesion(boid))
-                        .add(separation(boid))
-                        .add(boundary(boid));
+                    regions.add(run);
+                    next.add(run);
                 }
-
-                if (newVel.len() > 5) newVel = newVel.normalize().mul(4);
-                if (newVel.len() < 3) newVel = newVel.normalize().mul(3);
-
-                newPos = newPos.add(newVel);
-
-                newBoids.add(boid.withPos(newPos).withVel(newVel));
-            });
-
-        boids = newBoids;
-    }
-
-    Vec alignment(Boid boid) {
-
-        var velocities = boids.stream()
-            .filter(Objects::nonNull)
-            .filter(not(boid::equals))
-            .filter(withinDistance(150, boid.position()))
-            .limit(10)
-            .map(Boid::velocity)
-            .toList();
-
-        var size = velocities.size();
-
-        return size > 0 ?
-            velocities.stream()
-                .reduce(Vec.of(0,0), Vec::add)
-                .div(size)
-                .sub(boid.velocity())
-                .div(8) :
-            Vec.of(0,0);
-    }
-
-    Vec cohesion(Boid boid) {
-
-        var positions = boids.stream()
-            .filter(Objects::nonNull)
-            .filter(not(boid::equals))
-            .filter(withinDistance(20, boid.position()))
-            .limit(10)
-            .map(Boid::position)
-            .toList();
-
-        var size = positions.size();
-
-        return size > 0 ?
-            positions.stream()
-                .reduce(Vec.of(0,0), Vec::add)
-                .div(size)
-                .sub(boid.position())
-                .div(100) :
-            Vec.of(0,0);
+            }
+            open.clear();
+            open.addAll(next);
+        }
+        return regions;
     }
 
-    Vec separation(Boid boid) {
-        return boids.stream()
-            .filter(Objects::nonNull)
-            .filter(not(boid::equals))
-            .filter(withinDistance(20, boid.position()))
-            .limit(10)
-            .map(Boid::position)
-            .map(pos -> Vec.of(pos).sub(boid.position()))
-            .reduce(Vec.of(0,0), Vec::sub);
-    }
+    @Override
+    public void paintComponent(Graphics g) {
+        long start = Timings.ENABLED ? System.nanoTime() : 0;
+        for (String name; (name = removedNames.poll()) != null; ) {
+            sprites.evict(name);
+        }
+        var s = front;
+        double alpha = this.alpha;
 
-    Vec boundary(Boid boid) {
-        var x = boid.position().x();
-        var y = boid.position().y();
-        var inset      = 50;
-        var adjustment = 5;
-        int height = getHeight();
         int width = getWidth();
-
-        var v = Vec.of(0,0);
-
-        if (x < inset) {
-            v = v.withX((inset - x) / adjustment);
-        } else if (x > width-inset) {
-            v = v.withX(- (x - (width-inset)) / adjustment);
+        int height = getHeight();
+        int cols = width / LOD_CELL + 1;
+        int rows = height / LOD_CELL + 1;
+        if (density.length < cols * rows) {
+            density = new int[cols * rows];
+        } else {
+            Arrays.fill(density, 0, cols * rows, 0);
         }
-
-        if (y < inset) {
-            v = v.withY((inset - y) / adjustment);
-        } else if(y > height-inset) {
-            v = v.withY(-(y - (height-inset)) / adjustment);
+        if (cellOf.length < s.count) cellOf = new int[s.x.length];
+
+        // Only the cells that can reach into the clip, with their labels and heat
+        var clip = g.getClipBounds() instanceof Rectangle bounds ? bounds : new Rectangle(0, 0, width, height);
+        int c0 = (clip.x - sprites.maxWidth) / LOD_CELL - 1;
+        int c1 = (clip.x + clip.width) / LOD_CELL + 1;
+        int r0 = clip.y / LOD_CELL - 1;
+        int r1 = (clip.y + clip.height + sprites.maxAscent) / LOD_CELL + 1;
+
+        for (int i = 0; i < s.count; i++) {
+            double x = s.x(i, alpha);
+            double y = height - s.y(i, alpha);
+            if (x < -OFFSCREEN_MARGIN || x > width + OFFSCREEN_MARGIN ||
+                y < -OFFSCREEN_MARGIN || y > height + OFFSCREEN_MARGIN) {
+                cellOf[i] = -1;
+                continue;
+            }
+            int col = Math.clamp((long) (x / LOD_CELL), 0, cols - 1);
+            int row = Math.clamp((long) (y / LOD_CELL), 0, rows - 1);
+            if (col < c0 || col > c1 || row < r0 || row > r1) {
+                cellOf[i] = -1;
+                continue;
+            }
+            int c = row * cols + col;
+            cellOf[i] = c;
+            density[c]++;
         }
 
-        return v;
-    }
+        for (int c = 0; c < cols * rows; c++) {
+            if (density[c] > DENSE_CELL) drawHeat(g, (c % cols) * LOD_CELL, (c / cols) * LOD_CELL, density[c]);
+        }
 
-    Vec flee(Boid boid) {
-        var p = getMousePosition();
-        if (p != null) {
-            var cursorPos = Vec.of(p.getX(), getHeight() - p.getY());
-            if (withinDistance(50, cursorPos).test(boid)) {
-                if (boid.curious()) {
-                    return Vec.of(cursorPos).sub(boid.position());
-                } else {
-                    return Vec.of(boid.position()).sub(cursorPos);
-                }
+        boolean labels = visible <= LABEL_LIMIT;
+        for (int i = 0; i < s.count; i++) {
+            int c = cellOf[i];
+            if (c == -1) continue;
+            if (s.curious[i]) {
+                drawBoid(s, i, alpha, true, g);
+            } else if (density[c] <= DENSE_CELL) {
+                drawBoid(s, i, alpha, labels, g);
             }
         }
-        return Vec.of(0,0);
+        if (Timings.ENABLED) paintTimes.add(s.count, start);
     }
 
-    private static Predicate<Boid> withinDistance(float distance, Vec position) {
-        return b -> Vec.of(b.position()).sub(position).len() < distance;
+    void drawBoid(Snapshot s, int i, double alpha, boolean label, Graphics g) {
+        int size = s.size[i];
+        int x = (int) s.x(i, alpha) - size/2;
+        int y = getHeight() - (int) s.y(i, alpha) - size/2;
+
+        if (label) {
+            sprites.get(g, s.name[i], s.color[i], size).draw(g, x, y);
+        } else {
+            g.setColor(s.color[i]);
+            g.fillOval(x, y, size, size);
+        }
     }
 
-    private static void idle(long t0) {
-        var idle = 30l - Math.abs(t()-t0);
-        if (idle > 0) try { Thread.sleep(idle); } catch (InterruptedException e) { }
+    void drawHeat(Graphics g, int x, int y, int count) {
+        // At most half a cell past its own, within the dirty cells around it
+        int diameter = Math.min(2 * LOD_CELL, LOD_CELL + (int) Math.sqrt(count) * 2);
+        int offset = (LOD_CELL - diameter) / 2;
+        g.setColor(HEAT[Math.min(HEAT.length - 1, count * 2)]);
+        g.fillOval(x + offset, y + offset, diameter, diameter);
     }
 
-    private static long t() {
-        return System.currentTimeMillis();
+    void step() {
+        long start = Timings.ENABLED ? System.nanoTime() : 0;
+        flock.step(getWidth(), getHeight(), mouse);
+        if (Timings.ENABLED) stepTimes.add(flock.count, start);
     }
 
     private void handleBoidsCountChanges() {
-        if (! toRemove.isEmpty()) {
-            boids.removeAll(toRemove);
-            toRemove.clear();
+        int removed = 0;
+        for (Integer id; (id = toRemove.poll()) != null; ) {
+            if (removed == removedIds.length) removedIds = Arrays.copyOf(removedIds, removed * 2);
+            removedIds[removed++] = id;
         }
-
-        var t = t();
-        if (t - prevAdd > 100) {
-            var iter = toAdd.iterator();
-            if (iter.hasNext()) {
-                var boid = iter.next();
-                boids.add(boid);
-                iter.remove();
-                prevAdd = t;
-            }
+        if (removed > 0) flock.removeAll(removedIds, removed, removedNames::add);
+
+        int backlog = Math.max(pending.get(), expected - admitted);
+        int admit = spawnPolicy.admit(backlog, System.nanoTime());
+        int added = 0;
+        while (added < admit && toAdd.poll() instanceof Boid boid) {
+            pending.decrementAndGet();
+            flock.add(boid);
+            added++;
         }
+        admitted += added;
+        if (added > 0 && subscription instanceof Flow.Subscription s) s.request(added);
     }
 }
 
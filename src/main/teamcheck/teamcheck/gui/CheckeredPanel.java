@@ -4,6 +4,8 @@ import java.awt.Color;
 import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 
 import javax.swing.BorderFactory;
 import javax.swing.JPanel;
@@ -13,8 +15,7 @@ public class CheckeredPanel extends JPanel {
     final Color light;
     final Color dark;
 
-    GradientPaint lightPaint = null;
-    GradientPaint darkPaint = null;
+    BufferedImage background = null;
 
     public CheckeredPanel() {
         this(Color.decode("#eeeeee"), Color.decode("#dfdfdf"));
@@ -27,20 +28,44 @@ public class CheckeredPanel extends JPanel {
     }
 
     @Override
-    public void paintComponent(Graphics g1) {
+    public void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width < 16 || height <= 0) return;
+
+        if (background == null || background.getWidth() != width || background.getHeight() != height) {
+            if (background != null) background.flush();
+            background = render(width, height);
+        }
+        g.drawImage(background, 0, 0, null);
+    }
+
+    BufferedImage render(int width, int height) {
+        var gc = getGraphicsConfiguration();
+        var image = gc != null ?
+            gc.createCompatibleImage(width, height, Transparency.OPAQUE) :
+            new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
         int xNum = 16;
-        int length = getWidth()/xNum;
-        int yNum = getHeight()/length;
+        int length = width/xNum;
+        int yNum = height/length;
 
-        if (lightPaint == null) lightPaint = new GradientPaint(0,0, light, (int) (0.3*getWidth()), getHeight(), light.darker(), false);
-        if (darkPaint == null) darkPaint = new GradientPaint(0,0, dark, (int) (0.3*getWidth()), getHeight(), dark.darker(), false);
+        var lightPaint = new GradientPaint(0,0, light, (int) (0.3*width), height, light.darker(), false);
+        var darkPaint = new GradientPaint(0,0, dark, (int) (0.3*width), height, dark.darker(), false);
 
-        var g = (Graphics2D) g1;
-        for (int x = -1; x < xNum; x++) {
-            for (int y = 0; y < yNum+1; y++) {
-                g.setPaint(x%2 == 0 ? lightPaint : darkPaint);
-                g.fillRect( (x + y%2)*length, y*length, length, length);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, width, height);
+            for (int x = -1; x < xNum; x++) {
+                for (int y = 0; y < yNum+1; y++) {
+                    g.setPaint(x%2 == 0 ? lightPaint : darkPaint);
+                    g.fillRect( (x + y%2)*length, y*length, length, length);
+                }
             }
+        } finally {
+            g.dispose();
         }
+        return image;
     }
 }
@@ -0,0 +1,286 @@
+package teamcheck.gui;
+
+import module java.base;
+
+import java.util.List;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import teamcheck.Storage;
+import teamcheck.gui.TeamChooser.TeamNameAndId;
+
+/**
+ * What the team chooser remembers between runs: the teams the user leads,
+ * recent searches and what is known of the teams seen, with timestamps.
+ * Kept in memory and written to a single file in the background, replacing
+ * the per team keys previously stored in Preferences.
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * long    leader teams fetched at, epoch millis, 0 if never
+ * int     count
+ * count * (utf team id)
+ * int     count
+ * count * (utf query, long searched at, boolean complete, int count, count * (utf team id))
+ * int     count
+ * count * (utf team id, utf name, int members or -1, long seen at)
+ * </pre>
+ */
+class ChooserCache {
+
+    static final int MAGIC = 0x54434343; // TCCC
+    static final int VERSION = 1;
+    static final int MAX_SEARCHES = 16;
+    static final Duration LEADERS_MAX_AGE = Duration.ofHours(1);
+
+    // Teams only known from launches, the most recently seen are kept
+    static final int MAX_LAUNCHED = 64;
+    static final Duration LAUNCHED_MAX_AGE = Duration.ofDays(90);
+
+    record TeamInfo(String id, String name, int members, Instant seenAt) {
+        TeamNameAndId team() { return new TeamNameAndId(name, id); }
+    }
+
+    record Search(String query, Instant at, boolean complete, List<String> teamIds) {}
+
+    final Path file;
+    final Map<String, TeamInfo> teams = new HashMap<>();
+    final Deque<Search> searches = new ArrayDeque<>();
+    List<String> leaders = List.of();
+    Instant leadersFetchedAt = Instant.EPOCH;
+
+    final ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("chooser-cache").factory());
+    final AtomicBoolean saveQueued = new AtomicBoolean();
+
+    ChooserCache(Path file) {
+        this.file = file;
+    }
+
+    static Path path() {
+        return Storage.file("cache", "chooser");
+    }
+
+    /**
+     * Loads the cache file, or migrates the leader teams from the
+     * Preferences keys of earlier versions when there is no file yet.
+     */
+    static ChooserCache load(Preferences prefs) {
+        var cache = new ChooserCache(path());
+        if (Files.exists(cache.file)) {
+            cache.read();
+        } else {
+            cache.migrate(prefs);
+        }
+        return cache;
+    }
+
+    synchronized List<TeamNameAndId> leaders() {
+        return leaders.stream()
+            .map(teams::get)
+            .filter(Objects::nonNull)
+            .map(TeamInfo::team)
+            .toList();
+    }
+
+    /**
+     * Whether the leader teams were fetched long enough ago to be fetched again.
+     */
+    synchronized boolean leadersStale() {
+        return leadersFetchedAt.plus(LEADERS_MAX_AGE).isBefore(Instant.now());
+    }
+
+    synchronized void leaders(List<TeamNameAndId> leaderTeams) {
+        var now = Instant.now();
+        leaderTeams.forEach(t -> seen(t, now));
+        leaders = leaderTeams.stream().map(TeamNameAndId::id).toList();
+        leadersFetchedAt = now;
+        saveLater();
+    }
+
+    /**
+     * Forgets the leader teams, such as when logging out.
+     */
+    synchronized void clearLeaders() {
+        leaders = List.of();
+        leadersFetchedAt = Instant.EPOCH;
+        saveLater();
+    }
+
+    synchronized List<Search> searches() {
+        return List.copyOf(searches);
+    }
+
+    synchronized List<TeamNameAndId> teams(List<String> teamIds) {
+        return teamIds.stream()
+            .map(teams::get)
+            .filter(Objects::nonNull)
+            .map(TeamInfo::team)
+            .toList();
+    }
+
+    /**
+     * @param query    normalized query
+     * @param results  unfiltered results of the query
+     * @param complete whether the results are all results of the query
+     */
+    synchronized void searched(String query, List<TeamNameAndId> results, boolean complete) {
+        var now = Instant.now();
+        results.forEach(t -> seen(t, now));
+        searches.removeIf(s -> s.query().equals(query));
+        searches.addFirst(new Search(query, now, complete, results.stream().map(TeamNameAndId::id).toList()));
+        while (searches.size() > MAX_SEARCHES) searches.removeLast();
+        saveLater();
+    }
+
+    synchronized void launched(String teamId, String name, int members) {
+        teams.put(teamId, new TeamInfo(teamId, name, members, Instant.now()));
+        saveLater();
+    }
+
+    synchronized OptionalInt members(String teamId) {
+        return teams.get(teamId) instanceof TeamInfo info && info.members() >= 0 ?
+            OptionalInt.of(info.members()) :
+            OptionalInt.empty();
+    }
+
+    void seen(TeamNameAndId team, Instant at) {
+        int members = teams.get(team.id()) instanceof TeamInfo info ? info.members() : -1;
+        teams.put(team.id(), new TeamInfo(team.id(), team.name(), members, at));
+    }
+
+    /**
+     * Queues a write of the cache file, unless one is already queued.
+     */
+    void saveLater() {
+        if (saveQueued.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                saveQueued.set(false);
+                save();
+            });
+        }
+    }
+
+    void save() {
+        List<String> leaderIds;
+        Instant fetchedAt;
+        List<Search> searchList;
+        List<TeamInfo> infos;
+        synchronized (this) {
+            leaderIds = leaders;
+            fetchedAt = leadersFetchedAt;
+            searchList = List.copyOf(searches);
+            prune();
+            infos = List.copyOf(teams.values());
+        }
+        try {
+            Storage.writeAtomically(file, out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fetchedAt.toEpochMilli());
+                out.writeInt(leaderIds.size());
+                for (var id : leaderIds) out.writeUTF(id);
+                out.writeInt(searchList.size());
+                for (var search : searchList) {
+                    out.writeUTF(search.query());
+                    out.writeLong(search.at().toEpochMilli());
+                    out.writeBoolean(search.complete());
+                    out.writeInt(search.teamIds().size());
+                    for (var id : search.teamIds()) out.writeUTF(id);
+                }
+                out.writeInt(infos.size());
+                for (var info : infos) {
+                    out.writeUTF(info.id());
+                    out.writeUTF(info.name());
+                    out.writeInt(info.members());
+                    out.writeLong(info.seenAt().toEpochMilli());
+                }
+            });
+        } catch (IOException e) {
+            System.err.format("Couldn't save cache [%s] - %s%n", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the teams referenced by the leader teams or the recent searches,
+     * and the most recently launched other teams, seen within a while.
+     */
+    synchronized void prune() {
+        var referenced = new HashSet<String>(leaders);
+        searches.forEach(s -> referenced.addAll(s.teamIds()));
+        var cutoff = Instant.now().minus(LAUNCHED_MAX_AGE);
+        var launched = teams.values().stream()
+            .filter(t -> ! referenced.contains(t.id()))
+            .filter(t -> t.members() >= 0 && t.seenAt().isAfter(cutoff))
+            .sorted(Comparator.comparing(TeamInfo::seenAt).reversed())
+            .limit(MAX_LAUNCHED)
+            .map(TeamInfo::id)
+            .collect(Collectors.toSet());
+        teams.keySet().removeIf(id -> ! referenced.contains(id) && ! launched.contains(id));
+    }
+
+    synchronized void read() {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.format("Ignoring unknown cache format [%s]%n", file);
+                return;
+            }
+            var fetchedAt = Instant.ofEpochMilli(in.readLong());
+            var leaderIds = new ArrayList<String>();
+            for (int i = 0, n = in.readInt(); i < n; i++) leaderIds.add(in.readUTF());
+            var searchList = new ArrayList<Search>();
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                var query = in.readUTF();
+                var at = Instant.ofEpochMilli(in.readLong());
+                var complete = in.readBoolean();
+                var ids = new ArrayList<String>();
+                for (int j = 0, m = in.readInt(); j < m; j++) ids.add(in.readUTF());
+                searchList.add(new Search(query, at, complete, List.copyOf(ids)));
+            }
+            var infos = new ArrayList<TeamInfo>();
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                infos.add(new TeamInfo(in.readUTF(), in.readUTF(), in.readInt(), Instant.ofEpochMilli(in.readLong())));
+            }
+            leadersFetchedAt = fetchedAt;
+            leaders = List.copyOf(leaderIds);
+            searches.addAll(searchList);
+            infos.forEach(info -> teams.put(info.id(), info));
+        } catch (IOException e) {
+            System.err.format("Couldn't read cache [%s] - %s%n", file, e.getMessage());
+        }
+    }
+
+    void migrate(Preferences prefs) {
+        int numTeams = prefs.getInt("numTeams", 0);
+        if (numTeams == 0) return;
+
+        var migrated = new ArrayList<TeamNameAndId>();
+        for (int i = 0; i < numTeams; i++) {
+            var team = new TeamNameAndId(prefs.get("nameTeam"+i, null), prefs.get("idTeam"+i, null));
+            if (team.name() != null && team.id() != null) {
+                migrated.add(team);
+            }
+        }
+        synchronized (this) {
+            var now = Instant.now();
+            migrated.forEach(t -> seen(t, now));
+            leaders = migrated.stream().map(TeamNameAndId::id).toList();
+        }
+
+        writer.execute(() -> {
+            save();
+            try {
+                for (String key : prefs.keys()) {
+                    if (key.equals("numTeams") ||
+                        key.startsWith("nameTeam") ||
+                        key.startsWith("idTeam")) {
+                        prefs.remove(key);
+                    }
+                }
+                prefs.flush();
+            } catch (BackingStoreException e) {
+                System.err.format("Couldn't remove migrated preferences - %s%n", e.getMessage());
+            }
+        });
+    }
+}
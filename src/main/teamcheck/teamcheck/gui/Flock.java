@@ -0,0 +1,219 @@
+package teamcheck.gui;
+
+import module java.base;
+import module java.desktop;
+
+/**
+ * Simulation state of all boids, kept as parallel primitive arrays.
+ * A step reads the current arrays and writes the next ones, which are then
+ * swapped, so steady-state stepping allocates nothing. Arrays only grow
+ * when boids are added.
+ */
+class Flock {
+
+    int count = 0;
+
+    double[] px  = new double[0];
+    double[] py  = new double[0];
+    double[] vx  = new double[0];
+    double[] vy  = new double[0];
+    double[] npx = new double[0];
+    double[] npy = new double[0];
+    double[] nvx = new double[0];
+    double[] nvy = new double[0];
+
+    int[] id          = new int[0];
+    boolean[] curious = new boolean[0];
+    Color[] color     = new Color[0];
+    int[] size        = new int[0];
+    String[] name     = new String[0];
+
+    static final double ALIGNMENT_DISTANCE = 150;
+    static final double CLOSE_DISTANCE = 20;
+    static final int MAX_NEIGHBORS = 10;
+
+    final Grid grid = new Grid(ALIGNMENT_DISTANCE);
+
+    // Scratch result of the neighbor scan, to avoid returning Vec instances
+    double steerX, steerY;
+
+    void add(Boids.Boid boid) {
+        if (count == px.length) grow(Math.max(16, count * 2));
+        int i = count++;
+        px[i] = boid.position().x();
+        py[i] = boid.position().y();
+        vx[i] = boid.velocity().x();
+        vy[i] = boid.velocity().y();
+        id[i] = boid.id();
+        curious[i] = boid.curious();
+        color[i] = boid.color();
+        size[i] = boid.size();
+        name[i] = boid.name();
+    }
+
+    /**
+     * Removes the boids with the first {@code n} of the given ids, in a
+     * single pass over the flock. Sorts the ids in place.
+     */
+    void removeAll(int[] ids, int n, Consumer<String> removedName) {
+        Arrays.sort(ids, 0, n);
+        for (int i = count - 1; i >= 0; i--) {
+            if (Arrays.binarySearch(ids, 0, n, id[i]) >= 0) {
+                removedName.accept(name[i]);
+                removeAt(i);
+            }
+        }
+    }
+
+    void removeAt(int i) {
+        int last = --count;
+        px[i] = px[last];
+        py[i] = py[last];
+        vx[i] = vx[last];
+        vy[i] = vy[last];
+        id[i] = id[last];
+        curious[i] = curious[last];
+        color[i] = color[last];
+        size[i] = size[last];
+        name[i] = name[last];
+        color[last] = null;
+        name[last] = null;
+    }
+
+    void step(int width, int height, Point mouse) {
+        grid.rebuild(px, py, count, width, height);
+
+        boolean hasMouse = mouse != null;
+        double mx = hasMouse ? mouse.getX() : 0;
+        double my = hasMouse ? height - mouse.getY() : 0;
+
+        for (int i = 0; i < count; i++) {
+            double x = px[i], y = py[i];
+            double velX = vx[i], velY = vy[i];
+
+            double fleeX = 0, fleeY = 0;
+            if (hasMouse && (x-mx)*(x-mx) + (y-my)*(y-my) < 50*50) {
+                fleeX = curious[i] ? mx - x : x - mx;
+                fleeY = curious[i] ? my - y : y - my;
+            }
+
+            if (fleeX != 0 || fleeY != 0) {
+                velX = fleeX;
+                velY = fleeY;
+            } else {
+                steer(i);
+                velX += steerX;
+                velY += steerY;
+
+                velX += boundary(x, width);
+                velY += boundary(y, height);
+            }
+
+            double len = Math.sqrt(velX*velX + velY*velY);
+            if (len > 5) {
+                velX = velX / len * 4;
+                velY = velY / len * 4;
+                len = 4;
+            }
+            if (len < 3 && len > 0) {
+                velX = velX / len * 3;
+                velY = velY / len * 3;
+            }
+
+            npx[i] = x + velX;
+            npy[i] = y + velY;
+            nvx[i] = velX;
+            nvy[i] = velY;
+        }
+
+        double[] t;
+        t = px; px = npx; npx = t;
+        t = py; py = npy; npy = t;
+        t = vx; vx = nvx; nvx = t;
+        t = vy; vy = nvy; nvy = t;
+    }
+
+    /**
+     * Combined alignment, cohesion and separation steering of boid {@code i},
+     * into {@link #steerX}/{@link #steerY}. A single visit of the neighbors
+     * accumulates the velocities of the first 10 boids within alignment
+     * distance, and the positions of the first 10 boids within close distance.
+     */
+    void steer(int i) {
+        double x = px[i], y = py[i];
+        double alignX = 0, alignY = 0, closeX = 0, closeY = 0;
+        int aligned = 0, close = 0;
+
+        double alignmentDistance2 = ALIGNMENT_DISTANCE * ALIGNMENT_DISTANCE;
+        double closeDistance2 = CLOSE_DISTANCE * CLOSE_DISTANCE;
+
+        int cx0 = grid.col(x - ALIGNMENT_DISTANCE), cx1 = grid.col(x + ALIGNMENT_DISTANCE);
+        int cy0 = grid.row(y - ALIGNMENT_DISTANCE), cy1 = grid.row(y + ALIGNMENT_DISTANCE);
+        scan:
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * grid.cols + cx;
+                for (int k = grid.start[c]; k < grid.start[c+1]; k++) {
+                    int j = grid.entries[k];
+                    if (j == i) continue;
+                    double dx = px[j] - x, dy = py[j] - y;
+                    double d2 = dx*dx + dy*dy;
+                    if (d2 < alignmentDistance2 && aligned < MAX_NEIGHBORS) {
+                        alignX += vx[j];
+                        alignY += vy[j];
+                        aligned++;
+                    }
+                    if (d2 < closeDistance2 && close < MAX_NEIGHBORS) {
+                        closeX += px[j];
+                        closeY += py[j];
+                        close++;
+                    }
+                    if (aligned == MAX_NEIGHBORS && close == MAX_NEIGHBORS) break scan;
+                }
+            }
+        }
+
+        steerX = 0;
+        steerY = 0;
+        if (aligned > 0) {
+            // alignment
+            steerX += (alignX / aligned - vx[i]) / 8;
+            steerY += (alignY / aligned - vy[i]) / 8;
+        }
+        if (close > 0) {
+            // cohesion
+            steerX += (closeX / close - x) / 100;
+            steerY += (closeY / close - y) / 100;
+            // separation
+            steerX += close * x - closeX;
+            steerY += close * y - closeY;
+        }
+    }
+
+    static double boundary(double pos, int extent) {
+        var inset      = 50;
+        var adjustment = 5;
+        if (pos < inset) {
+            return (inset - pos) / adjustment;
+        } else if (pos > extent-inset) {
+            return - (pos - (extent-inset)) / adjustment;
+        }
+        return 0;
+    }
+
+    void grow(int capacity) {
+        px  = Arrays.copyOf(px, capacity);
+        py  = Arrays.copyOf(py, capacity);
+        vx  = Arrays.copyOf(vx, capacity);
+        vy  = Arrays.copyOf(vy, capacity);
+        npx = Arrays.copyOf(npx, capacity);
+        npy = Arrays.copyOf(npy, capacity);
+        nvx = Arrays.copyOf(nvx, capacity);
+        nvy = Arrays.copyOf(nvy, capacity);
+        id      = Arrays.copyOf(id, capacity);
+        curious = Arrays.copyOf(curious, capacity);
+        color   = Arrays.copyOf(color, capacity);
+        size    = Arrays.copyOf(size, capacity);
+        name    = Arrays.copyOf(name, capacity);
+    }
+}
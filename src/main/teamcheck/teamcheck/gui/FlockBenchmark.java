@@ -0,0 +1,55 @@
+package teamcheck.gui;
+
+import module java.base;
+import module java.desktop;
+
+import teamcheck.Vec;
+
+/**
+ * Steps flocks of fixed sizes on a fixed size canvas, without painting,
+ * and prints the mean time per simulation tick for each size.
+ *
+ * <pre>
+ * java -m teamcheck/teamcheck.gui.FlockBenchmark [size...]
+ * </pre>
+ */
+class FlockBenchmark {
+
+    static final int WIDTH = 1920;
+    static final int HEIGHT = 1080;
+    static final int WARMUP_TICKS = 200;
+    static final int TICKS = 500;
+
+    public static void main(String... args) {
+        var sizes = args.length > 0 ?
+            Arrays.stream(args).mapToInt(Integer::parseInt).toArray() :
+            new int[] { 500, 1_000, 2_000, 5_000, 10_000 };
+
+        System.out.format("%8s %10s %10s%n", "boids", "ms/tick", "us/boid");
+        for (int size : sizes) {
+            var flock = flock(size, new Random(42));
+            for (int i = 0; i < WARMUP_TICKS; i++) flock.step(WIDTH, HEIGHT, null);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < TICKS; i++) flock.step(WIDTH, HEIGHT, null);
+            double nanosPerTick = (System.nanoTime() - start) / (double) TICKS;
+
+            System.out.format("%8d %10.3f %10.3f%n", size, nanosPerTick / 1e6, nanosPerTick / 1e3 / size);
+        }
+    }
+
+    static Flock flock(int size, Random random) {
+        var flock = new Flock();
+        for (int i = 0; i < size; i++) {
+            boolean curious = i % 50 == 0;
+            flock.add(new Boids.Boid(i,
+                        Vec.of(random.nextDouble(WIDTH), random.nextDouble(HEIGHT)),
+                        Vec.of(random.nextDouble(-1, 1), random.nextDouble(-1, 1)),
+                        curious,
+                        curious ? Color.red : Color.green,
+                        curious ? 20 : 10,
+                        "boid" + i));
+        }
+        return flock;
+    }
+}
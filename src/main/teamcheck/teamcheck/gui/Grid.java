@@ -0,0 +1,68 @@
+package teamcheck.gui;
+
+import module java.base;
+
+/**
+ * Uniform grid of square cells, bucketing boid indices by position.
+ * Rebuilt once per step with a counting sort, so neighbor queries only
+ * visit the cells overlapping the query radius instead of every boid.
+ * The backing arrays are reused between steps and only grow.
+ */
+class Grid {
+
+    final double cellSize;
+
+    int cols = 1;
+    int rows = 1;
+    int[] start   = new int[2];
+    int[] entries = new int[0];
+    int[] cellOf  = new int[0];
+
+    Grid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    void rebuild(double[] xs, double[] ys, int count, int width, int height) {
+        cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        int cells = cols * rows;
+
+        if (start.length < cells + 1) {
+            start = new int[cells + 1];
+        } else {
+            Arrays.fill(start, 0, cells + 1, 0);
+        }
+        if (entries.length < count) {
+            entries = new int[count];
+            cellOf = new int[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            int c = cell(xs[i], ys[i]);
+            cellOf[i] = c;
+            start[c+1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            start[c+1] += start[c];
+        }
+        for (int i = 0; i < count; i++) {
+            entries[start[cellOf[i]]++] = i;
+        }
+        for (int c = cells; c > 0; c--) {
+            start[c] = start[c-1];
+        }
+        start[0] = 0;
+    }
+
+    int cell(double x, double y) {
+        return row(y) * cols + col(x);
+    }
+
+    int col(double x) {
+        return Math.clamp((long) (x / cellSize), 0, cols - 1);
+    }
+
+    int row(double y) {
+        return Math.clamp((long) (y / cellSize), 0, rows - 1);
+    }
+}
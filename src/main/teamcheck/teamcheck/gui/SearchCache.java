@@ -0,0 +1,62 @@
+package teamcheck.gui;
+
+import module java.base;
+
+import java.util.List;
+
+import teamcheck.gui.TeamChooser.TeamNameAndId;
+
+/**
+ * Recent team search results, keyed by normalized query. Only a query
+ * itself is answered from the cache: Lichess searches teams by full text,
+ * so the results of a longer query aren't a subset of those of its
+ * prefix. Least recently used and expired entries are evicted. Only used
+ * on the EDT.
+ */
+class SearchCache {
+
+    record Entry(List<TeamNameAndId> teams, long created) {}
+
+    final Map<String, Entry> entries;
+    final long ttlNanos;
+
+    SearchCache(int capacity, Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    static String normalize(String text) {
+        return text.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param query normalized query
+     * @return the teams found for the query, unless expired
+     */
+    Optional<List<TeamNameAndId>> lookup(String query) {
+        var entry = entries.get(query);
+        if (entry == null) return Optional.empty();
+        if (System.nanoTime() - entry.created() > ttlNanos) {
+            entries.remove(query);
+            return Optional.empty();
+        }
+        return Optional.of(entry.teams());
+    }
+
+    void put(String query, List<TeamNameAndId> teams) {
+        put(query, teams, Duration.ZERO);
+    }
+
+    /**
+     * Adds results fetched {@code age} ago, such as from a previous run.
+     */
+    void put(String query, List<TeamNameAndId> teams, Duration age) {
+        if (age.toNanos() >= ttlNanos) return;
+        entries.put(query, new Entry(teams, System.nanoTime() - age.toNanos()));
+    }
+}
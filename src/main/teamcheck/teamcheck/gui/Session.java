@@ -0,0 +1,89 @@
+package teamcheck.gui;
+
+import module chariot;
+import module java.base;
+
+import teamcheck.Member;
+
+/**
+ * The work of one launched team: the member fetch and the simulation, run
+ * on virtual threads owned by the session, and the kicks of the boids.
+ * <pre>
+ * NEW -> start -> RUNNING <-> pause/resume <-> PAUSED
+ * any -> dispose -> DISPOSED
+ * </pre>
+ * Disposing cancels all of it together and releases the member queues,
+ * the flock and the sprites. Called on the EDT.
+ * <p>
+ * Structured concurrency is still a preview feature, so the session scope
+ * is a per-launch executor which is shut down as a whole.
+ */
+class Session implements AutoCloseable {
+
+    enum State { NEW, RUNNING, PAUSED, DISPOSED }
+
+    final String teamId;
+    final Boids boids;
+    final ExecutorService threads;
+    State state = State.NEW;
+
+    Session(String teamId, Boids boids) {
+        this.teamId = teamId;
+        this.boids = boids;
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-" + teamId + "-", 0).factory());
+    }
+
+    /**
+     * Subscribes the boids to the members, and runs the simulation once
+     * the team has been found.
+     */
+    void start(Flow.Publisher<Member> members, CompletableFuture<Team> team, Consumer<String> updateTitle) {
+        if (state != State.NEW) return;
+        state = State.RUNNING;
+
+        members.subscribe(boids.subscriber());
+
+        threads.execute(() -> {
+            try {
+                updateTitle.accept(team.get(10, TimeUnit.SECONDS).name());
+                boids.start();
+            } catch (InterruptedException e) {
+                // Disposed
+            } catch (TimeoutException e) {
+                System.err.format("Couldn't find team [%s]%n", teamId);
+            } catch (ExecutionException e) {
+                System.err.format("Couldn't launch team [%s] - %s%n", teamId, e.getCause().getMessage());
+            }
+        });
+    }
+
+    void pause() {
+        if (state != State.RUNNING) return;
+        state = State.PAUSED;
+        boids.pause();
+    }
+
+    void resume() {
+        if (state != State.PAUSED) return;
+        state = State.RUNNING;
+        boids.resume();
+    }
+
+    /**
+     * Stops the simulation, cancels the member fetch and the kicks not yet
+     * made, and interrupts the remaining session threads, which closes the
+     * member stream. Doesn't wait for them, so it can be called on the EDT.
+     */
+    void dispose() {
+        if (state == State.DISPOSED) return;
+        state = State.DISPOSED;
+        boids.stop();
+        boids.deweaponize();
+        threads.shutdownNow();
+    }
+
+    @Override
+    public void close() {
+        dispose();
+    }
+}
@@ -0,0 +1,78 @@
+package teamcheck.gui;
+
+import module java.base;
+import module java.desktop;
+
+/**
+ * Copy of the flock state after a simulation tick, with the positions of
+ * both the previous and the current tick so painting can interpolate.
+ * Instances are recycled between the simulation thread and the EDT, but a
+ * published snapshot is never written to until the EDT has handed it back.
+ */
+class Snapshot {
+
+    long tick = -1;
+    long nanos;
+    int count;
+
+    // Bounds of the previous and current positions
+    double minX, minY, maxX, maxY;
+
+    double[] prevX   = new double[0];
+    double[] prevY   = new double[0];
+    double[] x       = new double[0];
+    double[] y       = new double[0];
+    int[] id         = new int[0];
+    boolean[] curious = new boolean[0];
+    Color[] color    = new Color[0];
+    int[] size       = new int[0];
+    String[] name    = new String[0];
+
+    void fill(Flock flock, long tick, long nanos) {
+        int n = flock.count;
+        if (x.length < n) {
+            int capacity = flock.px.length;
+            prevX   = new double[capacity];
+            prevY   = new double[capacity];
+            x       = new double[capacity];
+            y       = new double[capacity];
+            id      = new int[capacity];
+            curious = new boolean[capacity];
+            color   = new Color[capacity];
+            size    = new int[capacity];
+            name    = new String[capacity];
+        }
+        System.arraycopy(flock.npx, 0, prevX, 0, n);
+        System.arraycopy(flock.npy, 0, prevY, 0, n);
+        System.arraycopy(flock.px, 0, x, 0, n);
+        System.arraycopy(flock.py, 0, y, 0, n);
+        System.arraycopy(flock.id, 0, id, 0, n);
+        System.arraycopy(flock.curious, 0, curious, 0, n);
+        System.arraycopy(flock.color, 0, color, 0, n);
+        System.arraycopy(flock.size, 0, size, 0, n);
+        System.arraycopy(flock.name, 0, name, 0, n);
+        if (n < count) {
+            Arrays.fill(color, n, count, null);
+            Arrays.fill(name, n, count, null);
+        }
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, Math.min(prevX[i], x[i]));
+            maxX = Math.max(maxX, Math.max(prevX[i], x[i]));
+            minY = Math.min(minY, Math.min(prevY[i], y[i]));
+            maxY = Math.max(maxY, Math.max(prevY[i], y[i]));
+        }
+        this.count = n;
+        this.tick = tick;
+        this.nanos = nanos;
+    }
+
+    double x(int i, double alpha) {
+        return prevX[i] + (x[i] - prevX[i]) * alpha;
+    }
+
+    double y(int i, double alpha) {
+        return prevY[i] + (y[i] - prevY[i]) * alpha;
+    }
+}
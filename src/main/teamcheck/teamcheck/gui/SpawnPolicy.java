@@ -0,0 +1,107 @@
+package teamcheck.gui;
+
+import module java.base;
+
+/**
+ * Decides how many pending boids the simulation admits on a tick.
+ * Policies may keep state between ticks, so each {@link Boids} gets its own.
+ *
+ * <p>Policies can be selected with the {@code spawn} system property,
+ * <ul>
+ * <li>{@code rate:<per second>} - fixed rate, {@code rate:10} was the old behavior
+ * <li>{@code tick:<count>} - fixed budget per tick
+ * <li>{@code fill:<seconds>} - admit fast enough to show all pending boids within the given time (default {@code fill:30})
+ * <li>{@code instant} - admit all pending boids at once
+ * </ul>
+ */
+interface SpawnPolicy {
+
+    int admit(int pending, long nanos);
+
+    static SpawnPolicy rate(double perSecond) {
+        return new Rate(perSecond);
+    }
+
+    static SpawnPolicy perTick(int budget) {
+        return (pending, _) -> Math.min(pending, budget);
+    }
+
+    static SpawnPolicy fillWithin(Duration duration) {
+        return new FillWithin(duration, rate(10));
+    }
+
+    static SpawnPolicy instant() {
+        return (pending, _) -> pending;
+    }
+
+    static SpawnPolicy fromProperty() {
+        String spec = System.getProperty("spawn", "fill:30");
+        try {
+            return parse(spec);
+        } catch (IllegalArgumentException e) {
+            System.err.format("Unknown spawn policy [%s], using fill:30%n", spec);
+            return fillWithin(Duration.ofSeconds(30));
+        }
+    }
+
+    static SpawnPolicy parse(String spec) {
+        var kv = spec.split(":", 2);
+        String value = kv.length == 2 ? kv[1] : "";
+        return switch (kv[0]) {
+            case "instant" -> instant();
+            case "rate"    -> rate(Double.parseDouble(value));
+            case "tick"    -> perTick(Integer.parseInt(value));
+            case "fill"    -> fillWithin(Duration.ofMillis((long) (Double.parseDouble(value) * 1000)));
+            default        -> throw new IllegalArgumentException(spec);
+        };
+    }
+
+    final class Rate implements SpawnPolicy {
+        final double perNano;
+        final double maxCredit;
+        double credit = 0;
+        long last = -1;
+
+        Rate(double perSecond) {
+            this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.maxCredit = Math.max(1, perSecond);
+        }
+
+        @Override
+        public int admit(int pending, long nanos) {
+            if (last != -1) credit = Math.min(maxCredit, credit + (nanos - last) * perNano);
+            last = nanos;
+            int admit = (int) Math.min(pending, credit);
+            credit -= admit;
+            return admit;
+        }
+    }
+
+    final class FillWithin implements SpawnPolicy {
+        final long durationNanos;
+        final SpawnPolicy minimum;
+        long deadline = -1;
+        double credit = 0;
+
+        FillWithin(Duration duration, SpawnPolicy minimum) {
+            this.durationNanos = duration.toNanos();
+            this.minimum = minimum;
+        }
+
+        @Override
+        public int admit(int pending, long nanos) {
+            int admit = minimum.admit(pending, nanos);
+            if (pending == 0) {
+                deadline = -1;
+                credit = 0;
+                return 0;
+            }
+            if (deadline == -1) deadline = nanos + durationNanos;
+            long ticksLeft = Math.max(1, (deadline - nanos) / Boids.TICK_NANOS);
+            credit += (double) pending / ticksLeft;
+            int spread = (int) Math.min(pending, credit);
+            credit -= spread;
+            return Math.max(admit, spread);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package teamcheck.gui;
+
+import module java.base;
+import module java.desktop;
+
+/**
+ * Cache of pre-rendered boid images, circle and name label, so painting a
+ * boid is a single image blit instead of an oval fill and text layout.
+ * Least recently used sprites are evicted when the cache is full, and
+ * sprites of removed boids are evicted explicitly.
+ */
+class Sprites {
+
+    static final Color LABEL = Color.pink.darker().darker();
+
+    record Sprite(BufferedImage image, Color color, int size, int dy) {
+        void draw(Graphics g, int x, int y) {
+            g.drawImage(image, x, y + dy, null);
+        }
+    }
+
+    final Map<String, Sprite> cache;
+    int maxWidth = 0;
+    int maxAscent = 0;
+
+    Sprites(int capacity) {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Sprite> eldest) {
+                if (size() > capacity) {
+                    eldest.getValue().image().flush();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Sprite get(Graphics g, String name, Color color, int size) {
+        var sprite = cache.get(name);
+        if (sprite == null || sprite.size() != size || ! sprite.color().equals(color)) {
+            if (sprite != null) sprite.image().flush();
+            sprite = render(g, name, color, size);
+            cache.put(name, sprite);
+        }
+        return sprite;
+    }
+
+    void evict(String name) {
+        if (cache.remove(name) instanceof Sprite sprite) sprite.image().flush();
+    }
+
+    void clear() {
+        cache.values().forEach(sprite -> sprite.image().flush());
+        cache.clear();
+    }
+
+    /**
+     * Renders the circle with its top left corner at the image's left edge,
+     * below the ascent of the label, matching where the label baseline used
+     * to be drawn relative to the circle.
+     */
+    Sprite render(Graphics g, String name, Color color, int size) {
+        var font = g.getFont();
+        var metrics = g.getFontMetrics(font);
+        int ascent = metrics.getAscent();
+        int width = Math.max(size, metrics.stringWidth(name)) + 1;
+        int height = ascent + Math.max(size, metrics.getDescent()) + 1;
+        maxWidth = Math.max(maxWidth, width);
+        maxAscent = Math.max(maxAscent, ascent);
+
+        var image = g instanceof Graphics2D g2 ?
+            g2.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT) :
+            new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        var ig = image.createGraphics();
+        try {
+            ig.setFont(font);
+            ig.setColor(color);
+            ig.fillOval(0, ascent, size, size);
+            ig.setColor(LABEL);
+            ig.drawString(name, 0, ascent);
+        } finally {
+            ig.dispose();
+        }
+        return new Sprite(image, color, size, -ascent);
+    }
+}
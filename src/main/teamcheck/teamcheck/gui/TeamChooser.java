@@ -4,20 +4,26 @@ import module chariot;
 import module java.base;
 import module java.desktop;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import javax.swing.GroupLayout;
 
 import teamcheck.CheckUtil;
+import teamcheck.KickExecutor;
 
 public class TeamChooser extends JFrame {
 
-    Client client = null;
+    volatile Client client = null;
 
     final Preferences prefs;
+    // Loaded in the background with the client, only used once that is done
+    volatile ChooserCache cache = null;
     final JPanel mainPanel;
     final JPanel boidsPanel;
 
-    ExecutorService executor = Executors.newCachedThreadPool();
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    Session session = null;
     List<TeamNameAndId> leaderTeams = Collections.synchronizedList(new ArrayList<>());
 
     Font mono = Font.decode(Font.MONOSPACED + "-BOLD-30");
@@ -25,8 +31,17 @@ public class TeamChooser extends JFrame {
     JButton loginButton;
     JButton logoutButton;
     JButton launchButton;
+    JButton kickFlaggedButton;
+    JLabel kickStatus;
 
     JTextField searchField;
+    static final int SEARCH_DEBOUNCE_MILLIS = 300;
+    javax.swing.Timer searchTimer;
+    boolean settingSearchText = false;
+    Runnable cancelSearch = () -> {};
+    int searchGeneration = 0;
+    static final int SEARCH_LIMIT = 30;
+    final SearchCache searchCache = new SearchCache(64, Duration.ofMinutes(5));
     JComboBox<TeamNameAndId> combo;
     JLabel selectTeamLabel;
 
@@ -34,10 +49,17 @@ public class TeamChooser extends JFrame {
         @Override public String toString() { return name(); }
     }
 
-    public TeamChooser(Client client, Preferences prefs) {
+    final AtomicBoolean painted = new AtomicBoolean();
+
+    /**
+     * Shows the window right away with the selected team, the cache and the
+     * client are loaded in the background, enabling login, search and
+     * launch, and when it is authenticated the cached leader teams are shown
+     * and refreshed.
+     */
+    public TeamChooser(Preferences prefs) {
         super("Team Check");
 
-        this.client = client;
         this.prefs = prefs;
 
         var screenSize = Toolkit.getDefaultToolkit().getScreenSize();
@@ -53,9 +75,38 @@ public class TeamChooser extends JFrame {
 
         getContentPane().add(mainPanel);
 
+        // No need to simulate what can't be seen
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowIconified(WindowEvent e)   { if (session != null) session.pause(); }
+            @Override public void windowDeiconified(WindowEvent e) { if (session != null) session.resume(); }
+        });
+
         pack();
         setLocationRelativeTo(null);
         setVisible(true);
+        timing("Window shown");
+
+        executor.submit(() -> {
+            cache = ChooserCache.load(prefs);
+            timing("Cache loaded");
+            var loaded = Client.load(prefs);
+            client = loaded;
+            timing("Client loaded");
+            SwingUtilities.invokeLater(this::clientLoaded);
+            if (loaded instanceof ClientAuth) {
+                // Cached teams first, refreshed when fetched
+                synchronized (leaderTeams) {
+                    leaderTeams.clear();
+                    leaderTeams.addAll(cache.leaders());
+                }
+                leaderTeamsToCombo();
+                if (cache.leadersStale()) {
+                    refreshLeaderTeams();
+                    timing("Leader teams fetched");
+                    leaderTeamsToCombo();
+                }
+            }
+        });
     }
 
     void launch(String teamId, Consumer<String> updateTitle) {
@@ -69,44 +120,56 @@ public class TeamChooser extends JFrame {
         pack();
         repaint();
 
-        executor.submit( () -> {
-            var teamF = new CompletableFuture<Team>();
-            CheckUtil teamCheck = CheckUtil.of(
-                    teamId,
-                    t -> teamF.complete(t),
-                    boids::spawnBoidOnEdge
-                    );
+        var session = new Session(teamId, boids);
+        this.session = session;
 
-            if (client instanceof ClientAuth clientAuth) {
-                var mate = teamCheck.andMate(clientAuth, () -> {
-                    // onExpiredToken
-                    clientAuth.clearAuth(prefs);
-                    client = Client.load(prefs);
-                    boids.deweaponize();
-
-                    SwingUtilities.invokeLater(() -> {
-                        loginButton.setEnabled(true);
-                        logoutButton.setEnabled(false);
-                        combo.removeAllItems();
-                        combo.setEnabled(false);
-                    });
+        cache.members(teamId).ifPresent(boids::expect);
 
-                });
+        var teamF = new CompletableFuture<Team>();
+        CheckUtil teamCheck = CheckUtil.of(
+                teamId,
+                t -> {
+                    cache.launched(t.id(), t.name(), t.nbMembers());
+                    boids.expect(t.nbMembers());
+                    teamF.complete(t);
+                },
+                _ -> {}
+                );
 
-                boids.weaponize(mate);
-            }
+        if (client instanceof ClientAuth clientAuth) {
+            var mate = teamCheck.andMate(clientAuth, () -> {
+                // onExpiredToken
+                clientAuth.clearAuth(prefs);
+                client = Client.load(prefs);
+                leaderTeams.clear();
+                cache.clearLeaders();
+                boids.deweaponize();
 
-            try {
-                var future = executor.submit(() -> teamCheck.process(client));
-                var team = teamF.get(10, TimeUnit.SECONDS);
+                SwingUtilities.invokeLater(() -> {
+                    kickFlaggedButton.setEnabled(false);
+                    loginButton.setEnabled(true);
+                    logoutButton.setEnabled(false);
+                    combo.removeAllItems();
+                    combo.setEnabled(false);
+                });
 
-                updateTitle.accept(team.name());
+            });
 
-                executor.submit(() -> boids.start());
-                future.get();
-            } catch (Exception e) {}
+            var kickStatusUpdate = new AtomicBoolean();
+            var kicks = new KickExecutor(mate, KickExecutor.limiterFromProperty(), k -> {
+                // Coalesce status updates, at most one pending on the EDT
+                if (kickStatusUpdate.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(() -> {
+                        kickStatusUpdate.set(false);
+                        kickStatus.setText(k.status());
+                    });
+                }
+            });
+            boids.weaponize(kicks);
+            kickFlaggedButton.setEnabled(true);
+        }
 
-        });
+        session.start(teamCheck.publisher(client, Boids.SPAWN_BUFFER, session.threads), teamF, updateTitle);
     }
 
     private JPanel createMainPanel() {
@@ -139,6 +202,8 @@ public class TeamChooser extends JFrame {
                 client = Client.load(prefs);
             }
 
+            leaderTeams.clear();
+            cache.clearLeaders();
         });
 
         JLabel searchLabel = new JLabel("Team search:");
@@ -188,24 +253,16 @@ public class TeamChooser extends JFrame {
         launchButton.addActionListener(_ -> {
             TeamNameAndId team = (TeamNameAndId) combo.getSelectedItem();
             if (team != null) {
-                searchField.setText("");
+                clearSearchField();
                 launch(team.id(), s -> SwingUtilities.invokeLater(() -> setTitle("Team Check - " + s)));
             }
         });
 
-        if (client instanceof ClientAuth) {
-            loginButton.setEnabled(false);
-            logoutButton.setEnabled(true);
-
-            executor.submit(() -> {
-                teamsFromClientToPrefs();
-                teamsFromPrefsToCombo();
-            });
+        // Enabled when the client has been loaded
+        loginButton.setEnabled(false);
+        logoutButton.setEnabled(false);
+        searchField.setEnabled(false);
 
-        } else {
-            loginButton.setEnabled(true);
-            logoutButton.setEnabled(false);
-        }
 
         JButton aboutButton = new JButton("About...");
         initComponent(aboutButton);
@@ -235,46 +292,20 @@ public class TeamChooser extends JFrame {
             });
         });
 
+        // Search while typing, once the text has been unchanged for a moment.
+        // Enter searches right away.
+        searchTimer = new javax.swing.Timer(SEARCH_DEBOUNCE_MILLIS, _ -> search(searchField.getText()));
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e)  { if (! settingSearchText) searchTimer.restart(); }
+            @Override public void removeUpdate(DocumentEvent e)  { if (! settingSearchText) searchTimer.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { }
+        });
         searchField.addActionListener(_ -> {
-            SwingUtilities.invokeLater(() -> {
-                var text = searchField.getText();
-                if (text.isEmpty()) {
-                    boolean enabled = ! leaderTeams.isEmpty();
-                    launchButton.setEnabled(false);
-                    combo.removeAllItems();
-                    combo.actionPerformed(null);
-                    combo.setEnabled(false);
-                    leaderTeams.stream().forEach(combo::addItem);
-                    launchButton.setEnabled(enabled);
-                    combo.setEnabled(enabled);
-                    selectTeamLabel.setEnabled(enabled);
-                } else {
-                    launchButton.setEnabled(false);
-                    combo.removeAllItems();
-                    executor.submit( () -> {
-                        client.teams().search(text).stream()
-                            .map(t -> new TeamNameAndId(t.name(), t.id()))
-                            .limit(30)
-                            .filter(t ->
-                                    t.name().toLowerCase().contains(text.toLowerCase()) ||
-                                    t.id().toLowerCase().contains(text.toLowerCase()))
-                            .forEach(t -> {
-                                var item = new TeamNameAndId(t.name(), t.id());
-                                SwingUtilities.invokeLater(() -> {
-                                    combo.setEnabled(true);
-                                    combo.addItem(item);
-                                    launchButton.setEnabled(true);
-                                    selectTeamLabel.setEnabled(true);
-                                    repaint();
-                                });
-                            });
-                    });
-                }
-            }
-            );
+            searchTimer.stop();
+            search(searchField.getText());
         });
 
-
         var sid = prefs.get("selectedTeamId", null);
         var sname = prefs.get("selectedTeamName", null);
 
@@ -291,7 +322,7 @@ public class TeamChooser extends JFrame {
         } else {
             combo.setEnabled(true);
         }
-        launchButton.setEnabled(combo.getSelectedItem() != null);
+        launchButton.setEnabled(false);
 
 
 
@@ -339,22 +370,99 @@ public class TeamChooser extends JFrame {
     }
 
 
-    private void teamsFromPrefsToCombo() {
+    /**
+     * Cancels the search in progress, if any, and starts a new one.
+     * Called on the EDT. The results replace the combo items in one go,
+     * unless another search has been started meanwhile.
+     */
+    void search(String text) {
+        cancelSearch.run();
+        int generation = ++searchGeneration;
 
-        var teamsFromPrefs = new ArrayList<TeamNameAndId>();
-        String selectedTeamId = prefs.get("selectedTeamId", null);
+        String query = SearchCache.normalize(text);
+        if (query.isEmpty()) {
+            showTeams(List.copyOf(leaderTeams));
+            return;
+        }
+
+        var cached = searchCache.lookup(query);
+        if (cached.isPresent()) {
+            showTeams(cached.get());
+            return;
+        }
 
-        int numTeams = prefs.getInt("numTeams", 0);
-        for (int i = 0; i < numTeams; i++) {
-            var team = new TeamNameAndId(prefs.get("nameTeam"+i, null), prefs.get("idTeam"+i, null));
-            if (team.name() != null && team.id() != null) {
-                teamsFromPrefs.add(team);
+        launchButton.setEnabled(false);
+        var cancelled = new AtomicBoolean();
+        var open = new AtomicReference<Stream<Team>>();
+        var task = executor.submit(() -> {
+            try (var stream = client.teams().search(text.strip()).stream()) {
+                open.set(stream);
+                if (cancelled.get()) return;
+                var matches = stream
+                    .takeWhile(_ -> ! cancelled.get())
+                    .map(t -> new TeamNameAndId(t.name(), t.id()))
+                    .limit(SEARCH_LIMIT)
+                    .toList();
+                if (cancelled.get()) return;
+                // Fewer than asked for, all results of the query
+                boolean complete = matches.size() < SEARCH_LIMIT;
+                cache.searched(query, matches, complete);
+                SwingUtilities.invokeLater(() -> {
+                    searchCache.put(query, matches);
+                    if (generation == searchGeneration) showTeams(matches);
+                });
+            } catch (RuntimeException e) {
+                if (! cancelled.get()) System.err.format("Couldn't search teams - %s%n", e.getMessage());
             }
+        });
+
+        cancelSearch = () -> {
+            cancelled.set(true);
+            task.cancel(true);
+            // Closing the stream releases the connection, also when blocked reading it
+            if (open.get() instanceof Stream<Team> stream) stream.close();
+        };
+    }
+
+    /**
+     * Clears the search field without searching, and drops a search in
+     * progress, so the combo keeps its items and selection. Called on the EDT.
+     */
+    void clearSearchField() {
+        searchTimer.stop();
+        cancelSearch.run();
+        settingSearchText = true;
+        try {
+            searchField.setText("");
+        } finally {
+            settingSearchText = false;
         }
+    }
+
+    void showTeams(List<TeamNameAndId> teams) {
+        boolean enabled = ! teams.isEmpty();
+        combo.setEnabled(false);
+        combo.setModel(new DefaultComboBoxModel<>(teams.toArray(TeamNameAndId[]::new)));
+        combo.setEnabled(enabled);
+        launchButton.setEnabled(enabled && client != null);
+        selectTeamLabel.setEnabled(enabled);
+        repaint();
+    }
+
+    /**
+     * Shows the leader teams, unless the user has started a search, then
+     * they are only shown once the search field is cleared again.
+     */
+    private void leaderTeamsToCombo() {
+
+        var teams = List.copyOf(leaderTeams);
+        String selectedTeamId = prefs.get("selectedTeamId", null);
 
         SwingUtilities.invokeLater(() -> {
+            if (! searchField.getText().isBlank() || searchTimer.isRunning()) return;
+
             combo.removeAllItems();
-            for (var team : teamsFromPrefs) {
+            for (var team : teams) {
                 combo.addItem(team);
                 combo.setEnabled(true);
                 selectTeamLabel.setEnabled(true);
@@ -363,50 +471,74 @@ public class TeamChooser extends JFrame {
                 }
             }
 
-            searchField.setText("");
-            launchButton.setEnabled(combo.getSelectedItem() != null);
+            launchButton.setEnabled(client != null && combo.getSelectedItem() != null);
         });
 
     }
 
-    private void teamsFromClientToPrefs() {
-
-        String selectedTeamId = prefs.get("selectedTeamId", null);
-
-        if (client instanceof ClientAuth clientAuth &&
-            clientAuth.account().profile() instanceof Some(var user)) {
-            var teams = clientAuth.teams().byUserId(user.id()).stream()
-                .filter(team -> team.leaders().stream().anyMatch(leader -> leader.id().equals(user.id())))
-                .toList();
-            leaderTeams.clear();
-            teams.forEach(t -> leaderTeams.add(new TeamNameAndId(t.name(), t.id())));
+    /**
+     * Fetches the teams of the last known user while the account is
+     * fetched, and only fetches them again if the account turns out to be
+     * of another user.
+     */
+    private void refreshLeaderTeams() {
+        if (! (client instanceof ClientAuth clientAuth)) return;
+
+        String lastUserId = prefs.get("userId", null);
+        var teamsF = lastUserId == null ? null :
+            CompletableFuture.supplyAsync(() -> leaderTeamsOf(clientAuth, lastUserId), executor);
+
+        if (clientAuth.account().profile() instanceof Some(var user)) {
+            var teams = teamsF != null && user.id().equals(lastUserId) ?
+                teamsF.join() :
+                leaderTeamsOf(clientAuth, user.id());
+            if (! user.id().equals(lastUserId)) {
+                prefs.put("userId", user.id());
+                try { prefs.flush(); } catch (Exception e) {}
+            }
+            synchronized (leaderTeams) {
+                leaderTeams.clear();
+                leaderTeams.addAll(teams);
+            }
+            cache.leaders(teams);
+        } else if (teamsF != null) {
+            teamsF.cancel(true);
         }
+    }
 
-        try {
-            var keys = prefs.keys();
-            for (String key : keys) {
-                if (key.startsWith("nameTeam") ||
-                    key.startsWith("idTeam") ||
-                    key.startsWith("selctedTeam")) {
-                    prefs.remove(key);
-                }
-            }
+    static List<TeamNameAndId> leaderTeamsOf(ClientAuth client, String userId) {
+        return client.teams().byUserId(userId).stream()
+            .filter(team -> team.leaders().stream().anyMatch(leader -> leader.id().equals(userId)))
+            .map(t -> new TeamNameAndId(t.name(), t.id()))
+            .toList();
+    }
 
-            prefs.putInt("numTeams", leaderTeams.size());
+    void clientLoaded() {
+        for (var search : cache.searches()) {
+            searchCache.put(search.query(),
+                    cache.teams(search.teamIds()),
+                    Duration.between(search.at(), Instant.now()));
+        }
+        boolean auth = client instanceof ClientAuth;
+        loginButton.setEnabled(! auth);
+        logoutButton.setEnabled(auth);
+        searchField.setEnabled(true);
+        launchButton.setEnabled(combo.getSelectedItem() != null);
+    }
 
-            for (int i = 0; i <  leaderTeams.size(); i++) {
-                var team = leaderTeams.get(i);
-                prefs.put("nameTeam" + i, team.name());
-                prefs.put("idTeam" + i, team.id());
-                if (team.id().equals(selectedTeamId)) {
-                    prefs.put("selectedTeamId", team.id());
-                }
-            }
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (painted.compareAndSet(false, true)) timing("First paint");
+    }
 
-            prefs.flush();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Prints the time since the JVM started, when the {@code timing} system property is set.
+     */
+    static void timing(String event) {
+        if (! Timings.ENABLED) return;
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+            System.err.format("%-24s %6d ms%n", event, Duration.between(start, Instant.now()).toMillis()));
     }
 
     private JPanel createBoidsPanel(JPanel main) {
@@ -422,17 +554,44 @@ public class TeamChooser extends JFrame {
         backButton.setBorderPainted(false);
         buttonPanel.add(backButton);
 
+        var showAllButton = new JButton("Show all");
+        initComponent(showAllButton);
+        showAllButton.setForeground(Color.BLACK);
+        showAllButton.setFocusPainted(false);
+        showAllButton.setBorderPainted(false);
+        buttonPanel.add(showAllButton);
+
+        kickFlaggedButton = new JButton("Kick flagged");
+        initComponent(kickFlaggedButton);
+        kickFlaggedButton.setForeground(Color.BLACK);
+        kickFlaggedButton.setFocusPainted(false);
+        kickFlaggedButton.setBorderPainted(false);
+        kickFlaggedButton.setToolTipText("Kick the flagged members admitted to the window so far");
+        kickFlaggedButton.setEnabled(false);
+        buttonPanel.add(kickFlaggedButton);
+
+        kickStatus = new JLabel();
+        initComponent(kickStatus);
+        kickStatus.setFont(mono.deriveFont(Font.PLAIN, 18f));
+        buttonPanel.add(kickStatus);
+
+        kickFlaggedButton.addActionListener(_ -> {
+            if (session != null) session.boids.kickAllFlagged();
+        });
+
+        showAllButton.addActionListener(_ -> {
+            if (session != null) session.boids.spawnPolicy(SpawnPolicy.instant());
+        });
+
         backButton.addActionListener(_ -> {
             SwingUtilities.invokeLater(() -> {
-                var boids = Arrays.stream(panel.getComponents())
-                    .filter(c -> c instanceof Boids)
-                    .map(b -> (Boids) b)
-                    .findFirst();
-
-                boids.ifPresent(b -> {
-                    b.stop();
-                    panel.remove(b);
-                });
+                if (session != null) {
+                    session.dispose();
+                    panel.remove(session.boids);
+                    session = null;
+                }
+                kickFlaggedButton.setEnabled(false);
+                kickStatus.setText("");
 
                 getContentPane().remove(panel);
                 getContentPane().add(main);
@@ -518,9 +677,10 @@ public class TeamChooser extends JFrame {
 
             if (authResult instanceof Some(var client)) {
                 client.store(prefs);
+                this.client = client;
 
-                teamsFromClientToPrefs();
-                teamsFromPrefsToCombo();
+                refreshLeaderTeams();
+                leaderTeamsToCombo();
 
                 SwingUtilities.invokeLater(() -> {
 
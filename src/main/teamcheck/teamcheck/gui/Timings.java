@@ -0,0 +1,46 @@
+package teamcheck.gui;
+
+import module java.base;
+
+/**
+ * Mean duration of a repeated operation by number of boids, in buckets of
+ * powers of two, printed to stderr every few seconds when the
+ * {@code timing} system property is set. Not thread safe, each instance is
+ * used by a single thread.
+ */
+class Timings {
+
+    // Set with -Dtiming, which gives the property an empty value
+    static final boolean ENABLED = System.getProperty("timing") != null;
+    static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    final String name;
+    final long[] nanos = new long[32];
+    final int[] samples = new int[32];
+    long nextReport = System.nanoTime() + REPORT_NANOS;
+
+    Timings(String name) {
+        this.name = name;
+    }
+
+    void add(int boids, long startNanos) {
+        long now = System.nanoTime();
+        int bucket = 32 - Integer.numberOfLeadingZeros(boids);
+        nanos[bucket] += now - startNanos;
+        samples[bucket]++;
+        if (now - nextReport >= 0) {
+            report();
+            nextReport = now + REPORT_NANOS;
+        }
+    }
+
+    void report() {
+        for (int bucket = 0; bucket < samples.length; bucket++) {
+            if (samples[bucket] == 0) continue;
+            int from = bucket == 0 ? 0 : 1 << (bucket - 1);
+            int to = bucket == 0 ? 0 : (1 << bucket) - 1;
+            System.err.format("%-6s boids %6d-%-6d %8.3f ms mean of %d%n",
+                    name, from, to, nanos[bucket] / 1e6 / samples[bucket], samples[bucket]);
+        }
+    }
+}